@@ -1,14 +1,19 @@
 package com.github.blutorange.log4jcat;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.AsynchronousFileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Locale;
@@ -17,24 +22,31 @@ import java.util.function.BiFunction;
 
 
 abstract class ARandomAccessFileForwarder extends ARandomAccessInput {
-	private final static int LIMIT_LINE_CHARACTERS = 10000;
+	/** Maximum number of characters of a line, the rest of the line is returned as the next line. */
+	final static int LIMIT_LINE_CHARACTERS = 10000;
+	/** Marks a byte a single byte charset cannot decode, it is skipped, see {@link #byteTable(Charset)}. */
+	final static int IGNORED = -1;
 
 	private final static Map<String, BiFunction<RandomAccessFile, Charset, IRandomAccessInput>> map = new HashMap<>();
 	private final static BiFunction<RandomAccessFile, Charset, IRandomAccessInput> SINGLE = (raf,
-			charset) -> new R_SingleByte(raf, charset, null, false);
+			charset) -> new R_Buffered(raf, byteTable(charset), byteLineLimit(charset));
 	private final static BiFunction<RandomAccessFile, Charset, IRandomAccessInput> MULTI_2 = (raf,
-			charset) -> new R_ConstantMultiByte(raf, charset, null, false, 2);
+			charset) -> new R_ConstantMultiByte(raf, charset, null, 2);
 	private final static BiFunction<RandomAccessFile, Charset, IRandomAccessInput> MULTI_4 = (raf,
-			charset) -> new R_ConstantMultiByte(raf, charset, null, false, 4);
+			charset) -> new R_ConstantMultiByte(raf, charset, null, 4);
 	private final static BiFunction<RandomAccessFile, Charset, IRandomAccessInput> UTF_16_BOM = (raf,
-			charset) -> new R_ConstantMultiByte(raf, charset, new byte[]{(byte)0xFF,(byte)0xFE}, true, 2);
+			charset) -> R_ConstantMultiByte.withByteOrder(raf, StandardCharsets.UTF_16LE,
+					new byte[] { (byte) 0xFF, (byte) 0xFE }, StandardCharsets.UTF_16BE,
+					new byte[] { (byte) 0xFE, (byte) 0xFF }, 2);
 	private final static BiFunction<RandomAccessFile, Charset, IRandomAccessInput> UTF_32_BOM = (raf,
-			charset) -> new R_ConstantMultiByte(raf, charset, new byte[]{(byte)0xFF,(byte)0xFE,0,0}, false, 4);
+			charset) -> R_ConstantMultiByte.withByteOrder(raf, Charset.forName("UTF-32LE"),
+					new byte[] { (byte) 0xFF, (byte) 0xFE, 0, 0 }, Charset.forName("UTF-32BE"),
+					new byte[] { 0, 0, (byte) 0xFE, (byte) 0xFF }, 4);
 
 	static {
-		charset(StandardCharsets.UTF_8, (raf, charset) -> new R_UTF8(raf, charset, null, false));
+		charset(StandardCharsets.UTF_8, (raf, charset) -> new R_UTF8(raf, charset, null));
 
-		charset(StandardCharsets.US_ASCII, (raf, charset) -> new R_ASCII(raf));
+		charset(StandardCharsets.US_ASCII, SINGLE);
 		charset(StandardCharsets.ISO_8859_1, SINGLE);
 		charset("JIS_X0201", SINGLE);
 		charset("JIS_X0201", SINGLE);
@@ -72,17 +84,17 @@ abstract class ARandomAccessFileForwarder extends ARandomAccessInput {
 		charset("UTF-16", UTF_16_BOM);
 		charset("x-UTF-16LE-BOM", UTF_16_BOM);
 		charset("UTF-16BE", MULTI_2);
-		charset("UTF_16LE", MULTI_2);
+		charset("UTF-16LE", MULTI_2);
 		charset("UnicodeBigUnmarked", MULTI_2);
 		charset("UnicodeLittleUnmarked", MULTI_2);
 
 		charset("Big5", MULTI_2);
 
-		charset("UTF-32", MULTI_4);
+		charset("UTF-32", UTF_32_BOM);
 		charset("X-UTF-32BE-BOM", UTF_32_BOM);
 		charset("X-UTF-32LE-BOM", UTF_32_BOM);
-		charset("UTF-16BE", MULTI_4);
-		charset("UTF_16LE", MULTI_4);
+		charset("UTF-32BE", MULTI_4);
+		charset("UTF-32LE", MULTI_4);
 	}
 
 	private static void charset(final Charset charset,
@@ -96,25 +108,87 @@ abstract class ARandomAccessFileForwarder extends ARandomAccessInput {
 	}
 
 	protected final RandomAccessFile file;
+	/** The position of the next read, the file pointer is not used for reading. */
+	protected long position;
+	private File source;
+	private Charset sourceCharset;
+	private PagePool pool;
+	private Object poolKey;
+	/** For reading pages ahead into the pool, may be <code>null</code>. */
+	private AsynchronousFileChannel channel;
+	/** Whether the source is a temporary file. */
+	private boolean temporary;
+	/** Whether to delete the temporary file on close, duplicates do not. */
+	private boolean deleteOnClose;
+	/** Whether the file pointer follows {@link #tell()}, for a file opened by the caller. */
+	private boolean syncPointer;
 
 	protected ARandomAccessFileForwarder(final RandomAccessFile raf) {
 		this.file = raf;
 	}
 
+	@Override
+	File getFile() {
+		return source;
+	}
+
+	@Override
+	@SuppressWarnings("resource") // Closed by the caller.
+	ARandomAccessInput duplicate() throws IOException {
+		if (source == null)
+			return null;
+		final ARandomAccessFileForwarder copy = (ARandomAccessFileForwarder) of(source,
+				new RandomAccessFile(source, "r"), sourceCharset, pool, channel != null);
+		copy.temporary = temporary;
+		return copy;
+	}
+
+	@Override
+	boolean isTemporary() {
+		return temporary;
+	}
+
+	@Override
+	void prefetch(final long pos) {
+		if (channel != null && pos >= 0)
+			pool.prefetch(poolKey, channel, pos);
+	}
+
 	@Override
 	public void seek(final long pos) throws IOException {
-		file.seek(pos);
+		if (pos < 0)
+			throw new IOException("Negative seek offset");
+		position = pos;
+		if (syncPointer)
+			file.seek(position);
 	}
 
 	@Override
-	public long tell() throws IOException {
-		return file.getFilePointer();
+	public long tell() {
+		return position;
+	}
+
+	/**
+	 * Reads bytes at the given position of the file, through the page pool
+	 * when there is one.
+	 *
+	 * @return The number of bytes read, or -1 at the end of file.
+	 */
+	protected final int readAt(final long pos, final byte[] bytes, final int offset, final int length)
+			throws IOException {
+		if (pool != null)
+			return pool.read(poolKey, file, pos, bytes, offset, length);
+		file.seek(pos);
+		return file.read(bytes, offset, length);
 	}
 
 	@Override
-	public String readLine() throws IOException {
+	public boolean readLine(final StringBuilder line) throws IOException {
 		seekToNextCodepoint();
-		return readEncodedLine();
+		final boolean read = readEncodedLine(line);
+		if (syncPointer)
+			file.seek(position);
+		return read;
 	}
 
 	@Override
@@ -124,14 +198,34 @@ abstract class ARandomAccessFileForwarder extends ARandomAccessInput {
 
 	@Override
 	public void close() throws IOException {
-		file.close();
+		try {
+			file.close();
+		}
+		finally {
+			try {
+				if (channel != null)
+					channel.close();
+			}
+			finally {
+				if (deleteOnClose)
+					Files.deleteIfExists(source.toPath());
+			}
+		}
 	}
 
 	protected abstract void seekToNextCodepoint() throws IOException;
 
-	protected abstract String readEncodedLine() throws IOException;
+	/**
+	 * @param line
+	 *            Buffer for the line, its previous content is replaced.
+	 * @return Whether a line was read.
+	 */
+	protected abstract boolean readEncodedLine(StringBuilder line) throws IOException;
 
 	/**
+	 * Reading starts at the file pointer of the given file. After each seek or
+	 * line read, the file pointer is set to the position of the input, see
+	 * {@link #tell()}.
 	 *
 	 * @param raf
 	 * @param charset
@@ -140,17 +234,166 @@ abstract class ARandomAccessFileForwarder extends ARandomAccessInput {
 	 */
 	public static IRandomAccessInput of(final RandomAccessFile raf, final Charset charset)
 			throws UnsupportedEncodingException {
+		final ARandomAccessFileForwarder input = create(null, raf, charset);
+		input.syncPointer = true;
+		return input;
+	}
+
+	/**
+	 * @param source
+	 *            The file the random access file was opened for, may be
+	 *            <code>null</code>.
+	 * @param raf
+	 * @param charset
+	 * @return
+	 * @throws UnsupportedEncodingException
+	 */
+	static IRandomAccessInput of(final File source, final RandomAccessFile raf, final Charset charset)
+			throws UnsupportedEncodingException {
+		return create(source, raf, charset);
+	}
+
+	/**
+	 * @param source
+	 *            The file the random access file was opened for.
+	 * @param raf
+	 * @param charset
+	 * @param pool
+	 *            Pool for the pages of the file, may be <code>null</code>.
+	 * @param prefetching
+	 *            Whether to read pages ahead into the pool in the background,
+	 *            see {@link #prefetch(long)}. Needs a pool.
+	 * @return
+	 * @throws IOException
+	 *             When the charset is not supported, or the file could not be
+	 *             opened.
+	 */
+	static IRandomAccessInput of(final File source, final RandomAccessFile raf, final Charset charset,
+			final PagePool pool, final boolean prefetching) throws IOException {
+		final ARandomAccessFileForwarder input = create(source, raf, charset);
+		if (pool != null) {
+			input.pool = pool;
+			input.poolKey = ProbeCache.keyOf(source, raf.length());
+			if (prefetching)
+				input.channel = AsynchronousFileChannel.open(source.toPath(), StandardOpenOption.READ);
+		}
+		return input;
+	}
+
+	/**
+	 * Same as {@link #of(File, RandomAccessFile, Charset)}, but deletes the
+	 * file when the returned input is closed. Inputs duplicated from it do not
+	 * delete the file.
+	 *
+	 * @param source
+	 *            A temporary file.
+	 * @param raf
+	 * @param charset
+	 * @return
+	 * @throws UnsupportedEncodingException
+	 */
+	static IRandomAccessInput ofTemporary(final File source, final RandomAccessFile raf, final Charset charset)
+			throws UnsupportedEncodingException {
+		final ARandomAccessFileForwarder input = create(source, raf, charset);
+		input.temporary = true;
+		input.deleteOnClose = true;
+		return input;
+	}
+
+	/**
+	 * @param charset
+	 *            A charset with one byte per character.
+	 * @return The character of each byte, or {@link #IGNORED}. US-ASCII is
+	 *         read as Latin-1.
+	 */
+	static int[] byteTable(final Charset charset) {
+		return StandardCharsets.US_ASCII.equals(charset) ? R_Buffered.latin1() : R_Buffered.decoding(charset);
+	}
+
+	/**
+	 * @param charset
+	 *            A charset with one byte per character.
+	 * @return Maximum number of characters of a line, there is no limit for
+	 *         US-ASCII.
+	 */
+	static int byteLineLimit(final Charset charset) {
+		return StandardCharsets.US_ASCII.equals(charset) ? Integer.MAX_VALUE : LIMIT_LINE_CHARACTERS;
+	}
+
+	private static ARandomAccessFileForwarder create(final File source, final RandomAccessFile raf,
+			final Charset charset) throws UnsupportedEncodingException {
 		final BiFunction<RandomAccessFile, Charset, IRandomAccessInput> producer = map
 				.get(charset.name().toLowerCase(Locale.ROOT));
 		if (producer == null) {
 			throw new UnsupportedEncodingException(String.format("The charset %s is not supported yet.", charset));
 		}
-		return producer.apply(raf, charset);
+		final ARandomAccessFileForwarder input = (ARandomAccessFileForwarder) producer.apply(raf, charset);
+		input.source = source;
+		input.sourceCharset = charset;
+		try {
+			// Start where the random access file is.
+			input.position = raf.getFilePointer();
+		}
+		catch (@SuppressWarnings("unused") final IOException ignored) {
+			// Start at the beginning, read errors show up when reading lines.
+		}
+		return input;
 	}
 
-	private final static class R_ASCII extends ARandomAccessFileForwarder {
-		public R_ASCII(final RandomAccessFile raf) {
+	/**
+	 * Reads single byte charsets through a window of the file, so that
+	 * reading a line, seeking and telling only need a system call when the
+	 * position leaves the window. Each byte is decoded with a table.
+	 */
+	private final static class R_Buffered extends ARandomAccessFileForwarder {
+		private final static int WINDOW_SIZE = 65536;
+
+		private final int[] table;
+		private final int lineLimit;
+		private final byte[] window = new byte[WINDOW_SIZE];
+		private long windowStart;
+		private int windowLength;
+
+		/**
+		 * @param table
+		 *            The character of each byte, or {@link #IGNORED}.
+		 * @param lineLimit
+		 *            Maximum number of characters of a line, the rest of the
+		 *            line is returned as the next line.
+		 */
+		public R_Buffered(final RandomAccessFile raf, final int[] table, final int lineLimit) {
 			super(raf);
+			this.table = table;
+			this.lineLimit = lineLimit;
+		}
+
+		/** Latin-1, as {@link RandomAccessFile#readLine()} reads bytes. */
+		static int[] latin1() {
+			final int[] table = new int[256];
+			for (int i = 0; i < table.length; ++i)
+				table[i] = i;
+			return table;
+		}
+
+		/** Decodes each byte as {@link R_CharsetAware} would. */
+		static int[] decoding(final Charset charset) {
+			final CharsetDecoder decoder = charset.newDecoder();
+			decoder.onMalformedInput(CodingErrorAction.IGNORE);
+			decoder.onUnmappableCharacter(CodingErrorAction.IGNORE);
+			final int[] table = new int[256];
+			for (int i = 0; i < table.length; ++i) {
+				final CharBuffer decoded = CharBuffer.allocate(2);
+				decoder.reset();
+				decoder.decode(ByteBuffer.wrap(new byte[] { (byte) i }), decoded, true);
+				decoder.flush(decoded);
+				table[i] = decoded.position() == 1 ? decoded.get(0) : IGNORED;
+			}
+			return table;
+		}
+
+		@Override
+		public boolean isEof() throws IOException {
+			return position >= windowStart + windowLength && position >= file.length();
 		}
 
 		@Override
@@ -158,161 +401,180 @@ abstract class ARandomAccessFileForwarder extends ARandomAccessInput {
 			// Single byte.
 		}
 
+		/**
+		 * Reads the window starting at the current position. With a pool, the
+		 * window ends with the page, so that no other page is waited for.
+		 *
+		 * @return Whether there is any data at the current position.
+		 */
+		private boolean fill() throws IOException {
+			if (position >= windowStart && position < windowStart + windowLength)
+				return true;
+			final int read = readAt(position, window, 0, window.length);
+			windowStart = position;
+			windowLength = Math.max(read, 0);
+			return read > 0;
+		}
+
 		@Override
-		protected String readEncodedLine() throws IOException {
-			return file.readLine();
+		protected boolean readEncodedLine(final StringBuilder line) throws IOException {
+			line.setLength(0);
+			if (!fill())
+				return false;
+			while (line.length() < lineLimit && fill()) {
+				final int c = table[window[(int) (position - windowStart)] & 0xFF];
+				++position;
+				if (c == '\n')
+					break;
+				if (c == '\r') {
+					if (fill() && table[window[(int) (position - windowStart)] & 0xFF] == '\n')
+						++position;
+					break;
+				}
+				if (c != IGNORED)
+					line.append((char) c);
+			}
+			return true;
 		}
 	}
 
+	/**
+	 * Decodes the file with a charset decoder. The bytes of a line are found
+	 * from the position of the decoder in its input, so each byte is only
+	 * decoded once, or twice for the bytes decoded after a line break. The
+	 * decoder is reset at the start of each line, so the charset must not
+	 * depend on anything read before, such as a byte order mark.
+	 */
 	private abstract static class R_CharsetAware extends ARandomAccessFileForwarder {
-		protected final byte[] abuffer;
-		protected final ByteBuffer buffer;
-		protected final CharBuffer cbuffer;
+		private final static int BUFFER_SIZE = 8192;
+
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		private final CharBuffer cbuffer = CharBuffer.allocate(BUFFER_SIZE);
 		protected final CharsetDecoder decoder;
-		protected final Charset charset;
 		private final byte[] bom;
-		boolean encBOM;
-
-		public R_CharsetAware(final RandomAccessFile raf, final Charset charset, final byte[] bom, final boolean encBOM) {
-			this(raf, charset, bom, encBOM, 128);
-		}
 
-		public R_CharsetAware(final RandomAccessFile raf, final Charset charset, final byte[] bom, final boolean encBOM, final int bufferSize) {
+		public R_CharsetAware(final RandomAccessFile raf, final Charset charset, final byte[] bom) {
 			super(raf);
-			this.charset = charset;
 			this.bom = bom;
-			this.encBOM = encBOM;
-			abuffer = new byte[bufferSize];
-			buffer = ByteBuffer.allocate(bufferSize);
-			cbuffer = CharBuffer.allocate(bufferSize);
-			cbuffer.position(bufferSize);
 			decoder = charset.newDecoder();
 			decoder.onMalformedInput(CodingErrorAction.IGNORE);
 			decoder.onUnmappableCharacter(CodingErrorAction.IGNORE);
 		}
 
 		@Override
-		public void close() throws IOException {
-			super.close();
-		}
-
-		@Override
-		protected final String readEncodedLine() throws IOException {
-			String eolChar = "";
-			final long initial = file.getFilePointer();
-			if (initial >= file.length())
-				return null;
-			final StringBuilder sb = new StringBuilder();
-			int c = -1;
-			boolean eol = false;
-			while (!eol && sb.length() < LIMIT_LINE_CHARACTERS) {
-				// Decode more bytes when the buffer is empty.
-				if (!cbuffer.hasRemaining()) {
-					// Seek the file to the current position.
-					final long bytesProcessed = sb.length() == 0 ? 0 : charset.encode(sb.toString()).remaining() - (encBOM?bom.length:0);
-					file.seek(initial+bytesProcessed);
-					// Read data into the buffer.
-					final int read = file.read(abuffer);
-					if (read == -1) {
-						eol = true;
-						continue;
+		protected final boolean readEncodedLine(final StringBuilder line) throws IOException {
+			final long initial = position;
+			// File position of the end of the buffer.
+			long next = initial;
+			boolean eof = false;
+			// Whether the line ended with \r, which may be followed by \n.
+			boolean cr = false;
+			buffer.clear().flip();
+			decoder.reset();
+			line.setLength(0);
+			while (true) {
+				cbuffer.clear();
+				cbuffer.limit(cr ? 1 : Math.min(BUFFER_SIZE, LIMIT_LINE_CHARACTERS - line.length()));
+				final int start = buffer.position();
+				final CoderResult result = decoder.decode(buffer, cbuffer, eof);
+				final int decoded = cbuffer.position();
+				if (cr) {
+					// Overflow without a character when a surrogate pair follows.
+					if (decoded > 0 || result.isOverflow()) {
+						if (decoded == 0 || cbuffer.get(0) != '\n')
+							buffer.position(start);
+						break;
 					}
-					buffer.clear();
-					buffer.position(abuffer.length-read);
-					buffer.put(abuffer, 0, read);
-					buffer.position(abuffer.length-read);
-					// Decode the data into characters.
-					cbuffer.clear();
-					Arrays.fill(cbuffer.array(), (char)-2);
-					decoder.decode(buffer, cbuffer, true);
-					cbuffer.position(0);
 				}
-				switch (c = cbuffer.get()) {
-				case (char)-2:
-					cbuffer.position(abuffer.length);
-					break;
-				case (char)-1:
-					eol = true;
-					break;
-				case '\n':
-					eol = true;
-					eolChar = "\n";
-					break;
-				case '\r':
-					eol = true;
-					if (cbuffer.get() != '\n') {
-						eolChar = "\r";
+				else {
+					final int lineBreak = indexOfLineBreak(cbuffer.array(), decoded);
+					if (lineBreak >= 0) {
+						line.append(cbuffer.array(), 0, lineBreak);
+						if (lineBreak + 1 < decoded) {
+							// Decode again up to the line break, to find the position of its end.
+							buffer.position(start);
+							decoder.reset();
+							cbuffer.clear();
+							cbuffer.limit(lineBreak + 1);
+							decoder.decode(buffer, cbuffer, eof);
+						}
+						if (cbuffer.get(lineBreak) == '\n')
+							break;
+						cr = true;
+						continue;
 					}
+					line.append(cbuffer.array(), 0, decoded);
+					// A surrogate pair does not fit when one character is left.
+					if (line.length() >= LIMIT_LINE_CHARACTERS || result.isOverflow() && decoded == 0)
+						break;
+				}
+				if (result.isUnderflow()) {
+					if (eof)
+						break;
+					buffer.compact();
+					final int read = readAt(next, buffer.array(), buffer.position(), buffer.remaining());
+					if (read == -1)
+						eof = true;
 					else {
-						eolChar = "\r\n";
+						buffer.position(buffer.position() + read);
+						next += read;
 					}
-					break;
-				default:
-					sb.append((char) c);
-					break;
+					buffer.flip();
 				}
 			}
-			cbuffer.position(abuffer.length);
+			if (eof && next == initial)
+				return false;
+			position = next - buffer.remaining();
+			return true;
+		}
 
-			if ((c == -1) && (sb.length() == 0)) {
-				return null;
+		private static int indexOfLineBreak(final char[] chars, final int length) {
+			for (int i = 0; i < length; ++i) {
+				final char c = chars[i];
+				if (c == '\n' || c == '\r')
+					return i;
 			}
-
-			// Get the actual length of bytes read.
-			// To do so, we need to reencode the decoded
-			// string. Which may lead to issues regarding
-			// unicode normalization... And we need to
-			// account for the BOM added by some encoders.
-			final String string = sb.toString();
-			final int eolBytes = eolChar.isEmpty() ? 0
-					: (charset.encode(eolChar).remaining() - (encBOM ? bom.length : 0));
-			final int readBytes = string.isEmpty() ? 0
-					: (charset.encode(string).remaining() - (encBOM ? bom.length : 0));
-			file.seek(initial + readBytes + eolBytes);
-
-			return string;
+			return -1;
 		}
 
 		protected void skipBOM() throws IOException {
-			if (bom != null && file.getFilePointer() == 0) {
+			if (bom != null && position == 0) {
 				final byte[] start = new byte[bom.length];
-				if (file.read(start) == start.length) {
-					if (Arrays.equals(start, bom)) {
-						final ByteBuffer bb = ByteBuffer.wrap(bom);
-						cbuffer.clear();
-						decoder.decode(bb, cbuffer, false);
-						cbuffer.position(abuffer.length);
-					}
-					else {
-						file.seek(0);
-					}
-				}
-				else {
-					file.seek(0);
-				}
+				if (readAt(0, start, 0, start.length) == start.length && Arrays.equals(start, bom))
+					position = start.length;
 			}
 		}
 	}
 
-	private static class R_SingleByte extends R_CharsetAware {
-		public R_SingleByte(final RandomAccessFile raf, final Charset charset, final byte[] bom,final boolean encBOM) {
-			super(raf, charset, bom, encBOM);
-		}
-
-		@Override
-		protected void seekToNextCodepoint() throws IOException {
-			skipBOM();
-		}
-	}
-
 	private static class R_ConstantMultiByte extends R_CharsetAware {
 		private final long count;
 
-		public R_ConstantMultiByte(final RandomAccessFile raf, final Charset charset, final byte[] bom, final boolean encBOM, final long count) {
-			super(raf, charset, bom, encBOM);
+		public R_ConstantMultiByte(final RandomAccessFile raf, final Charset charset, final byte[] bom, final long count) {
+			super(raf, charset, bom);
 			this.count = count;
 		}
 
+		/**
+		 * Decodes a file that may start with a byte order mark in the byte
+		 * order of the mark, or in big endian when there is none.
+		 */
+		static R_ConstantMultiByte withByteOrder(final RandomAccessFile raf, final Charset littleEndian,
+				final byte[] littleEndianBOM, final Charset bigEndian, final byte[] bigEndianBOM, final long count) {
+			final byte[] start = new byte[littleEndianBOM.length];
+			try {
+				final long pos = raf.getFilePointer();
+				raf.seek(0);
+				final int read = raf.read(start);
+				raf.seek(pos);
+				if (read == start.length && Arrays.equals(start, littleEndianBOM))
+					return new R_ConstantMultiByte(raf, littleEndian, littleEndianBOM, count);
+			}
+			catch (@SuppressWarnings("unused") final IOException ignored) {
+				// Read errors show up when reading lines.
+			}
+			return new R_ConstantMultiByte(raf, bigEndian, bigEndianBOM, count);
+		}
+
 		@Override
 		protected void seekToNextCodepoint() throws IOException {
 			final long offset = tell() % count;
@@ -324,20 +586,25 @@ abstract class ARandomAccessFileForwarder extends ARandomAccessInput {
 	}
 
 	private static class R_UTF8 extends R_CharsetAware {
-		public R_UTF8(final RandomAccessFile raf, final Charset charset, final byte[] bom, final boolean encBOM) {
-			super(raf, charset, bom, encBOM);
+		private final byte[] skipped = new byte[64];
+
+		public R_UTF8(final RandomAccessFile raf, final Charset charset, final byte[] bom) {
+			super(raf, charset, bom);
 		}
 
 		@Override
 		protected void seekToNextCodepoint() throws IOException {
-			int b;
-			long pos;
-			do {
-				pos = file.getFilePointer();
-				b = file.read();
+			int read;
+			while ((read = readAt(position, skipped, 0, skipped.length)) > 0) {
+				for (int i = 0; i < read; ++i) {
+					if ((skipped[i] & 0b10000000) == 0) {
+						position += i;
+						skipBOM();
+						return;
+					}
+				}
+				position += read;
 			}
-			while (b != -1 && (b & 0b10000000) != 0);
-			file.seek(pos);
 			skipBOM();
 		}
 	}
@@ -1,5 +1,6 @@
 package com.github.blutorange.log4jcat;
 
+import java.io.File;
 import java.io.IOException;
 
 /**
@@ -9,6 +10,55 @@ import java.io.IOException;
  * @author madgaksha
  */
 abstract class ARandomAccessInput implements IRandomAccessInput {
+	/**
+	 * @return The file this input reads from, or <code>null</code> when it is
+	 *         not backed by a file.
+	 */
+	File getFile() {
+		return null;
+	}
+
+	/**
+	 * @return Whether the file of this input is a temporary copy of the data,
+	 *         which is not worth an index, see {@link Log4J#index(boolean)}.
+	 */
+	boolean isTemporary() {
+		return false;
+	}
+
+	/**
+	 * Opens another input for the same data, with its own position, eg. for
+	 * reading different parts of the data from different threads.
+	 *
+	 * @return The new input, or <code>null</code> when this input cannot be
+	 *         opened again.
+	 * @throws IOException
+	 *             When the data could not be opened again.
+	 */
+	ARandomAccessInput duplicate() throws IOException {
+		return null;
+	}
+
+	/**
+	 * Hints that the data at the given position will probably be read soon,
+	 * so that it can be read in the background. Does nothing by default.
+	 *
+	 * @param pos
+	 *            Position that will probably be read.
+	 */
+	void prefetch(final long pos) {
+		// Only inputs that can read in the background do something.
+	}
+
+	@Override
+	public abstract boolean readLine(StringBuilder line) throws IOException;
+
+	@Override
+	public String readLine() throws IOException {
+		final StringBuilder line = new StringBuilder();
+		return readLine(line) ? line.toString() : null;
+	}
+
 	@Override
 	public boolean isEof() throws IOException {
 		return tell() >= length();
@@ -0,0 +1,27 @@
+package com.github.blutorange.log4jcat;
+
+/**
+ * What the log file reader does with the continuation lines of a log entry,
+ * such as the lines of a stack trace. The lines are always read, so that the
+ * next log entry is found.
+ *
+ * @see Log4J#continuationMode(ContinuationMode)
+ */
+public enum ContinuationMode {
+	/**
+	 * Adds all continuation lines to the message.
+	 */
+	KEEP,
+
+	/**
+	 * Adds the continuation lines to the message, up to the number of
+	 * characters set by {@link Log4J#continuationLimit(int)}.
+	 */
+	TRUNCATE,
+
+	/**
+	 * Skips the continuation lines, the message is only the part on the first
+	 * line of the log entry.
+	 */
+	DISCARD;
+}
@@ -335,19 +335,23 @@ public final class Cyperus {
 			file = new File(index < 0 ? baseName : (baseName + "." + index));
 			if (file.exists() && file.canRead()) {
 				try (final IRandomAccessInput input = InputFactory.open(file, encoding)) {
-					long pos = cat.find(input, posStart == -1 ? start : end);
+					long pos;
 					boolean added = false;
 					if (posStart < 0) {
-						// Looking for the start.
+						// Looking for the start, the end could be in the same file.
+						final long[] range = cat.findRange(input, start, end);
+						pos = range[0];
 						if (pos < input.length()) {
 							// Found the start.
 							list.add(file.getCanonicalPath());
 							posStart = pos;
-							input.seek(0);
-							pos = cat.find(input, end);
+							pos = range[1];
 							added = true;
 						}
 					}
+					else {
+						pos = cat.find(input, end);
+					}
 					// No 'else', start and end could be in the same file.
 					if (posStart >= 0) {
 						// Looking for the end.
@@ -0,0 +1,162 @@
+package com.github.blutorange.log4jcat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import org.slf4j.event.LoggingEvent;
+
+/**
+ * Iterates over the log entries in a range of bytes of a log file. Splits the
+ * range at the start of a log entry, see
+ * {@link ILogReader#seekToNextEvent(IRandomAccessInput)}. Each part is read
+ * with its own reader and its own input, so that the parts can be read by
+ * different threads. When the input cannot be opened again, the range is not
+ * split.
+ */
+final class EventSpliterator implements Spliterator<LoggingEvent>, Closeable {
+	/** Ranges smaller than this many bytes are not split any further. */
+	private static final long MIN_SPLIT = 65536L;
+
+	private final ILogReaderFactory factory;
+	private final List<IRandomAccessInput> opened;
+	private final long end;
+	private IRandomAccessInput input;
+	private ILogReader logReader;
+	private long pos;
+
+	/**
+	 * @param factory
+	 *            For creating a reader for each part.
+	 * @param input
+	 *            The log file.
+	 * @param start
+	 *            Position of the first log entry.
+	 * @param end
+	 *            Position after the last log entry.
+	 */
+	public EventSpliterator(final ILogReaderFactory factory, final IRandomAccessInput input, final long start,
+			final long end) {
+		this(factory, input, null, start, end, new ArrayList<>());
+	}
+
+	private EventSpliterator(final ILogReaderFactory factory, final IRandomAccessInput input,
+			final ILogReader logReader, final long start, final long end, final List<IRandomAccessInput> opened) {
+		this.factory = factory;
+		this.input = input;
+		this.logReader = logReader;
+		this.pos = start;
+		this.end = end;
+		this.opened = opened;
+	}
+
+	@Override
+	public boolean tryAdvance(final Consumer<? super LoggingEvent> action) {
+		if (pos >= end)
+			return false;
+		final LoggingEvent event;
+		try {
+			if (logReader == null)
+				logReader = factory.create();
+			input.seek(pos);
+			event = logReader.processSingle(input);
+			pos = event != null ? input.tell() : end;
+		}
+		catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (event == null)
+			return false;
+		action.accept(event);
+		return true;
+	}
+
+	@Override
+	public Spliterator<LoggingEvent> trySplit() {
+		if (end - pos < MIN_SPLIT || !(input instanceof ARandomAccessInput))
+			return null;
+		final ILogReader otherReader = factory.create();
+		final long middle = pos + (end - pos) / 2;
+		final IRandomAccessInput other;
+		final long split;
+		try {
+			other = ((ARandomAccessInput) input).duplicate();
+			if (other == null)
+				return null;
+		}
+		catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		try {
+			split = eventStartAfter(otherReader, other, middle);
+		}
+		catch (final IOException e) {
+			closeQuietly(other);
+			throw new UncheckedIOException(e);
+		}
+		if (split < 0 || split >= end) {
+			// Not split, the other input is not needed.
+			closeQuietly(other);
+			return null;
+		}
+		synchronized (opened) {
+			opened.add(other);
+		}
+		// The prefix keeps the current input, this continues with the other
+		// one.
+		final EventSpliterator prefix = new EventSpliterator(factory, input, logReader, pos, split, opened);
+		input = other;
+		logReader = otherReader;
+		pos = split;
+		return prefix;
+	}
+
+	/**
+	 * Finds the first log entry starting at or after the given position.
+	 *
+	 * @return The position of the log entry, or -1 when there is none.
+	 */
+	static long eventStartAfter(final ILogReader logReader, final IRandomAccessInput input, final long pos)
+			throws IOException {
+		// Go to the start of the next line, then to the next log entry.
+		input.seek(Math.max(0L, pos - 1));
+		if (pos > 0)
+			input.readLine();
+		return logReader.seekToNextEvent(input) ? input.tell() : -1L;
+	}
+
+	@Override
+	public long estimateSize() {
+		return Math.max(0L, end - pos);
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+
+	/**
+	 * Closes the inputs opened for the parts, but not the original input.
+	 */
+	@Override
+	public void close() {
+		synchronized (opened) {
+			for (final IRandomAccessInput other : opened)
+				closeQuietly(other);
+			opened.clear();
+		}
+	}
+
+	private static void closeQuietly(final IRandomAccessInput other) {
+		try {
+			other.close();
+		}
+		catch (@SuppressWarnings("unused") final IOException ignored) {
+			// Only read from, nothing to lose.
+		}
+	}
+}
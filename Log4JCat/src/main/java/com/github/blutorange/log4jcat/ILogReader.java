@@ -5,6 +5,12 @@ import java.io.IOException;
 import org.slf4j.event.LoggingEvent;
 
 interface ILogReader {
+	/**
+	 * Returned by {@link #processTimeStamp(IRandomAccessInput)} when there is
+	 * no next event.
+	 */
+	public static final long NO_EVENT = Long.MIN_VALUE;
+
 	/**
 	 * Reads and returns the next logging event, skipping the current event.
 	 * @param reader Input from which to read data.
@@ -13,6 +19,18 @@ interface ILogReader {
 	 */
 	public LoggingEvent processSingle(IRandomAccessInput input) throws IOException;
 
+	/**
+	 * Same as {@link #processSingle(IRandomAccessInput)}, but only parses the
+	 * timestamp of the logging event. Much cheaper as no logging event is
+	 * created and the other lines of the event are skipped. When another field
+	 * to search by is configured, see {@link Log4J#searchKey(String)}, returns
+	 * that field instead.
+	 * @param input Input from which to read data.
+	 * @return The timestamp of the logging event or {@link #NO_EVENT} if none has been found.
+	 * @throws IOException When the stream could not be read.
+	 */
+	public long processTimeStamp(IRandomAccessInput input) throws IOException;
+
 	/**
 	 * Seeks to the next logging event and positions the file pointer at the beginning of the line.
 	 * @param reader File to read from. The pointer should initially be at the beginning of a line.
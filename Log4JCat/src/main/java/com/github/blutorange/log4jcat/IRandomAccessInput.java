@@ -55,6 +55,27 @@ public interface IRandomAccessInput extends Closeable {
 	 */
 	public String readLine() throws IOException;
 
+	/**
+	 * Same as {@link #readLine()}, but reads the line into the given buffer
+	 * instead of creating a new string, so that lines can be checked without
+	 * producing garbage.
+	 *
+	 * @param line
+	 *            Buffer for the line, its previous content is replaced.
+	 * @return Whether a line was read, <code>false</code> and an empty buffer
+	 *         when the end of file is encountered before a byte can be read.
+	 * @exception IOException
+	 *                If an I/O error occurs.
+	 */
+	public default boolean readLine(final StringBuilder line) throws IOException {
+		final String string = readLine();
+		line.setLength(0);
+		if (string == null)
+			return false;
+		line.append(string);
+		return true;
+	}
+
 	/**
 	 * Same as {@link #readLine}, but reads all the next lines of text from the input stream until the end of the stream.
 	 *
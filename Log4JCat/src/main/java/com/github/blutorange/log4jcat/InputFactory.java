@@ -7,8 +7,12 @@ import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 import org.apache.commons.io.IOUtils;
 import org.eclipse.jdt.annotation.NonNull;
@@ -26,12 +30,19 @@ import org.eclipse.jdt.annotation.Nullable;
  * <p>
  * Using {@link InputStream} and {@link Reader} is discouraged as they do not
  * provide random access and need to be read into memory fully. do not pr
+ * For large streams, see {@link #openSpilled(InputStream, Charset)}.
  * </p>
  *
  * @author madgaksha
  *
  */
 public final class InputFactory {
+	/**
+	 * Number of pages of the pool used by
+	 * {@link #openPrefetching(Path, Charset, PagePool)} when none is given.
+	 */
+	public static final int PREFETCH_PAGES = 32;
+
 	private InputFactory() {
 		// Contains only static factory methods.
 	}
@@ -97,6 +108,45 @@ public final class InputFactory {
 		return open(path.toFile(), charset);
 	}
 
+	/**
+	 * Maps the log file into memory instead of reading it through a
+	 * {@link RandomAccessFile}, which avoids a system call for each seek and
+	 * read. Files larger than 1 GB are mapped in several segments. Changes to
+	 * the length of the file after it was opened are not seen. Falls back to
+	 * {@link #open(Path, Charset)} for charsets other than UTF-8 and single
+	 * byte charsets.
+	 * <p>
+	 * Java cannot unmap a file explicitly. Closing the input only drops its
+	 * references to the mapping, the file stays mapped until the mapping is
+	 * garbage collected. Until then, some systems such as Windows do not allow
+	 * the file to be deleted or truncated.
+	 *
+	 * @param path
+	 *            Path to the log file. Interpreted as an empty file when
+	 *            <code>null</code> or when the file could not be found.
+	 * @param charset
+	 *            The charset the file uses. Uses the default charset when
+	 *            <code>null</code>.
+	 * @return A random access input for log file trimming.
+	 * @throws IOException
+	 *             When the file could not be mapped.
+	 */
+	@NonNull
+	public static IRandomAccessInput openMapped(@Nullable final Path path, @Nullable final Charset charset)
+			throws IOException {
+		return openMapped(path, charset, RandomAccessMappedFile.SEGMENT_BITS);
+	}
+
+	static IRandomAccessInput openMapped(@Nullable final Path path, @Nullable final Charset charset,
+			final int segmentBits) throws IOException {
+		if (path == null || !Files.isRegularFile(path))
+			return new RandomAccessDummy();
+		final Charset cs = charset != null ? charset : Charset.defaultCharset();
+		if (!RandomAccessMappedFile.supports(cs))
+			return open(path, cs);
+		return RandomAccessMappedFile.open(path.toFile(), cs, segmentBits);
+	}
+
 	/**
 	 * Uses the default charset.
 	 *
@@ -150,7 +200,120 @@ public final class InputFactory {
 		catch (@SuppressWarnings("unused") final FileNotFoundException ignored) {
 			return new RandomAccessDummy();
 		}
-		return open(raf, charset);
+		return ARandomAccessFileForwarder.of(file, raf, charset != null ? charset : Charset.defaultCharset());
+	}
+
+	/**
+	 * Reads the pages of the log file through the given pool, so that pages
+	 * read before, by this or any other input opened with the same pool, are
+	 * read from memory instead of from the file.
+	 *
+	 * @param file
+	 *            The log file. Interpreted as an empty file when
+	 *            <code>null</code> or when the file could not be found.
+	 * @param charset
+	 *            The charset of this file. Uses the default charset when
+	 *            <code>null</code>.
+	 * @param pool
+	 *            The pool for the pages of the file. The file is read
+	 *            directly when <code>null</code>.
+	 * @return A random access input for log file trimming.
+	 * @throws IOException
+	 *             When the charset is not supported, or the attributes of the
+	 *             file could not be read.
+	 */
+	@NonNull
+	@SuppressWarnings("resource") // We only open the stream.
+	public static IRandomAccessInput open(@Nullable final File file, @Nullable final Charset charset,
+			@Nullable final PagePool pool) throws IOException {
+		if (file == null)
+			return new RandomAccessDummy();
+		final RandomAccessFile raf;
+		try {
+			raf = new RandomAccessFile(file, "r");
+		}
+		catch (@SuppressWarnings("unused") final FileNotFoundException ignored) {
+			return new RandomAccessDummy();
+		}
+		try {
+			return ARandomAccessFileForwarder.of(file, raf, charset != null ? charset : Charset.defaultCharset(),
+					pool, false);
+		}
+		catch (final IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Same as {@link #open(File, Charset, PagePool)}, but while a search reads
+	 * a log entry, it already reads the pages it may read next in the
+	 * background, see {@link Log4JCat#find(IRandomAccessInput, long)}. This
+	 * reads more data, but waits less for it, which pays off on storage with
+	 * a high latency, such as a network drive.
+	 *
+	 * @param path
+	 *            Path to the log file. Interpreted as an empty file when
+	 *            <code>null</code> or when the file could not be found.
+	 * @param charset
+	 *            The charset the file uses. Uses the default charset when
+	 *            <code>null</code>.
+	 * @param pool
+	 *            The pool for the pages of the file. Uses a pool of
+	 *            {@link #PREFETCH_PAGES} pages for this file only when
+	 *            <code>null</code>.
+	 * @return A random access input for log file trimming.
+	 * @throws IOException
+	 *             When the charset is not supported, or the file could not be
+	 *             opened.
+	 */
+	@NonNull
+	@SuppressWarnings("resource") // We only open the stream.
+	public static IRandomAccessInput openPrefetching(@Nullable final Path path, @Nullable final Charset charset,
+			@Nullable final PagePool pool) throws IOException {
+		if (path == null)
+			return new RandomAccessDummy();
+		final File file = path.toFile();
+		final RandomAccessFile raf;
+		try {
+			raf = new RandomAccessFile(file, "r");
+		}
+		catch (@SuppressWarnings("unused") final FileNotFoundException ignored) {
+			return new RandomAccessDummy();
+		}
+		try {
+			return ARandomAccessFileForwarder.of(file, raf, charset != null ? charset : Charset.defaultCharset(),
+					pool != null ? pool : new PagePool((long) PREFETCH_PAGES * PagePool.DEFAULT_PAGE_SIZE), true);
+		}
+		catch (final IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Same as {@link #open(File, Charset, PagePool)}.
+	 *
+	 * @param path
+	 *            Path to the log file. Interpreted as an empty file when
+	 *            <code>null</code> or when the file could not be found.
+	 * @param charset
+	 *            The charset the file uses. Uses the default charset when
+	 *            <code>null</code>.
+	 * @param pool
+	 *            The pool for the pages of the file. The file is read
+	 *            directly when <code>null</code>.
+	 * @return A random access input for log file trimming.
+	 * @throws IOException
+	 *             When the charset is not supported, or the attributes of the
+	 *             file could not be read.
+	 */
+	@NonNull
+	public static IRandomAccessInput open(@Nullable final Path path, @Nullable final Charset charset,
+			@Nullable final PagePool pool) throws IOException {
+		if (path == null)
+			return new RandomAccessDummy();
+		return open(path.toFile(), charset, pool);
 	}
 
 	/**
@@ -158,7 +321,9 @@ public final class InputFactory {
 	 *
 	 * @param randomAccessFile
 	 *            The log file. Interpreted as an empty file when
-	 *            <code>null</code>.
+	 *            <code>null</code>. Reading starts at its file pointer, which
+	 *            is kept at the position of the input after each seek or line
+	 *            read.
 	 * @return A random access input for log file trimming.
 	 * @throws UnsupportedEncodingException When the charset is not supported.
 	 */
@@ -171,7 +336,9 @@ public final class InputFactory {
 	/**
 	 * @param randomAccessFile
 	 *            The log file. Interpreted as an empty file when
-	 *            <code>null</code>.
+	 *            <code>null</code>. Reading starts at its file pointer, which
+	 *            is kept at the position of the input after each seek or line
+	 *            read.
 	 * @param encoding
 	 *            The encoding of this file. Uses the default encoding when
 	 *            <code>null</code>.
@@ -187,7 +354,9 @@ public final class InputFactory {
 	/**
 	 * @param randomAccessFile
 	 *            The log file. Interpreted as an empty file when
-	 *            <code>null</code>.
+	 *            <code>null</code>. Reading starts at its file pointer, which
+	 *            is kept at the position of the input after each seek or line
+	 *            read.
 	 * @param charset
 	 *            The charset of this file. Uses the default charset when
 	 *            <code>null</code>.
@@ -224,7 +393,8 @@ public final class InputFactory {
 
 	/**
 	 * Use carefully. As we need random access, the entire input stream needs to
-	 * be read into memory.
+	 * be read into memory. For large streams, use
+	 * {@link #openSpilled(InputStream, Charset)}.
 	 *
 	 * @param stream
 	 *            Stream containing the log file. Interpreted as an empty stream
@@ -263,7 +433,7 @@ public final class InputFactory {
 
 	/**
 	 * Use carefully. As we need random access, the entire reader needs to be
-	 * read into memory.
+	 * read into memory. For large readers, use {@link #openSpilled(Reader)}.
 	 *
 	 * @param reader
 	 *            Reader containing the log file. Interpreted as an empty reader
@@ -280,6 +450,80 @@ public final class InputFactory {
 		return open(string);
 	}
 
+	/**
+	 * Copies the input stream to a temporary file and reads the log file from
+	 * there, so that only a small buffer needs to be kept in memory, no matter
+	 * how large the stream is. The temporary file is deleted when the returned
+	 * input is closed. The stream is read fully, but not closed.
+	 *
+	 * @param stream
+	 *            Stream containing the log file. Interpreted as an empty stream
+	 *            when <code>null</code>.
+	 * @param charset
+	 *            Charset to use. Uses the default charset when
+	 *            <code>null</code>.
+	 * @return A random access input for log file trimming.
+	 * @throws IOException
+	 *             When the charset is not supported, the stream could not be
+	 *             read, or the temporary file could not be written.
+	 */
+	@NonNull
+	public static IRandomAccessInput openSpilled(@Nullable final InputStream stream, @Nullable final Charset charset)
+			throws IOException {
+		if (stream == null)
+			return new RandomAccessDummy();
+		final Path temp = Files.createTempFile("log4jcat", ".log");
+		try {
+			Files.copy(stream, temp, StandardCopyOption.REPLACE_EXISTING);
+			return openTemporary(temp, charset != null ? charset : Charset.defaultCharset());
+		}
+		catch (final IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+	}
+
+	/**
+	 * Same as {@link #openSpilled(InputStream, Charset)}, the characters are
+	 * written to the temporary file as UTF-8.
+	 *
+	 * @param reader
+	 *            Reader containing the log file. Interpreted as an empty reader
+	 *            when <code>null</code>.
+	 * @return A random access input for log file trimming.
+	 * @throws IOException
+	 *             When the reader could not be read, or the temporary file
+	 *             could not be written.
+	 */
+	@NonNull
+	public static IRandomAccessInput openSpilled(@Nullable final Reader reader) throws IOException {
+		if (reader == null)
+			return new RandomAccessDummy();
+		final Path temp = Files.createTempFile("log4jcat", ".log");
+		try {
+			try (final Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				IOUtils.copy(reader, writer);
+			}
+			return openTemporary(temp, StandardCharsets.UTF_8);
+		}
+		catch (final IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+	}
+
+	@SuppressWarnings("resource") // Closed by the caller.
+	private static IRandomAccessInput openTemporary(final Path temp, final Charset charset) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(temp.toFile(), "r");
+		try {
+			return ARandomAccessFileForwarder.ofTemporary(temp.toFile(), raf, charset);
+		}
+		catch (final IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
 	private static Charset getCharset(final String encoding) {
 		return encoding != null ? Charset.forName(encoding) : Charset.defaultCharset();
 	}
@@ -0,0 +1,371 @@
+package com.github.blutorange.log4jcat;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Matches a line against the log format, without going through the regular
+ * expression generated by {@link Log4JReader}. The log format is compiled into
+ * a list of literal texts, runs of spaces and fields. Fields are delimited by
+ * looking for the literal text following them. The candidate field ends are
+ * tried in the same order the regular expression would try them, so that the
+ * fields are the same as the groups of the regular expression. Positions
+ * from which the rest of the line is known not to match are remembered, so
+ * that no position is tried twice.
+ * <p>
+ * After a successful {@link #matches(CharSequence)}, this object is the
+ * {@link MatchResult}, valid until the next line is matched. Instances are
+ * not thread-safe.
+ */
+final class LayoutMatcher implements MatchResult {
+	/** How the text of a field is matched. */
+	enum Field {
+		/** Any text, as short as possible. */
+		DEFAULT,
+		/** Any text, as long as possible. */
+		GREEDY,
+		/** Non-whitespace, optionally followed by whitespace. */
+		NOSPACE,
+		/** A timestamp, matched with its own regular expression. */
+		TIMESTAMP;
+	}
+
+	private static final int LITERAL = -1;
+	private static final int SPACES = -2;
+
+	/** Either {@link #LITERAL}, {@link #SPACES}, or the field number. */
+	private final int[] tokens;
+	private final String[] literals;
+	private final Field[] fields;
+	private final Pattern timestampPattern;
+	private final Matcher timestampMatcher;
+	private final int timestampSpaces;
+	private final int[] starts;
+	private final int[] ends;
+	private final BitSet failed = new BitSet();
+	private CharSequence text;
+	private int length;
+	private int terminator;
+
+	private LayoutMatcher(final int[] tokens, final String[] literals, final Field[] fields,
+			final Pattern timestampPattern, final int timestampSpaces) {
+		this.tokens = tokens;
+		this.literals = literals;
+		this.fields = fields;
+		this.timestampPattern = timestampPattern;
+		this.timestampMatcher = timestampPattern != null ? timestampPattern.matcher("") : null;
+		this.timestampSpaces = timestampSpaces;
+		this.starts = new int[fields.length];
+		this.ends = new int[fields.length];
+	}
+
+	/**
+	 * @param format
+	 *            The log format with each keyword replaced by its index, as
+	 *            used by {@link Log4JReader} to build its regular expression.
+	 * @param keywordFields
+	 *            How each keyword is matched, by the index of the keyword.
+	 * @param timestampRegexp
+	 *            The regular expression for timestamps, may be
+	 *            <code>null</code> when there is no timestamp.
+	 * @return The compiled matcher, or <code>null</code> when the log format
+	 *         contains a wildcard or other text this matcher does not support.
+	 */
+	static LayoutMatcher compile(final String format, final List<Field> keywordFields,
+			final String timestampRegexp) {
+		final List<Integer> tokens = new ArrayList<>();
+		final List<String> literals = new ArrayList<>();
+		final List<Field> fields = new ArrayList<>();
+		final StringBuilder literal = new StringBuilder();
+		Pattern timestampPattern = null;
+		int i = 0;
+		while (i < format.length()) {
+			final char c = format.charAt(i);
+			if (c >= '0' && c <= '9') {
+				int j = i;
+				while (j < format.length() && format.charAt(j) >= '0' && format.charAt(j) <= '9')
+					++j;
+				final Field field = keywordFields.get(Integer.parseInt(format.substring(i, j)));
+				if (field == Field.TIMESTAMP) {
+					if (timestampRegexp == null)
+						return null;
+					try {
+						timestampPattern = Pattern.compile(timestampRegexp);
+					}
+					catch (@SuppressWarnings("unused") final PatternSyntaxException ignored) {
+						return null;
+					}
+				}
+				addLiteral(literal, tokens, literals);
+				tokens.add(fields.size());
+				literals.add(null);
+				fields.add(field);
+				i = j;
+			}
+			else if (c == ' ') {
+				while (i < format.length() && format.charAt(i) == ' ')
+					++i;
+				addLiteral(literal, tokens, literals);
+				tokens.add(SPACES);
+				literals.add(null);
+			}
+			else if (c == '*' || c == '\\') {
+				// Wildcards and escapes are left to the regular expression.
+				return null;
+			}
+			else {
+				literal.append(c);
+				++i;
+			}
+		}
+		addLiteral(literal, tokens, literals);
+		int timestampSpaces = 0;
+		if (timestampRegexp != null)
+			for (int k = 0; k < timestampRegexp.length(); ++k)
+				if (timestampRegexp.charAt(k) == ' ')
+					++timestampSpaces;
+		return new LayoutMatcher(tokens.stream().mapToInt(Integer::intValue).toArray(),
+				literals.toArray(new String[literals.size()]), fields.toArray(new Field[fields.size()]),
+				timestampPattern, timestampSpaces);
+	}
+
+	/**
+	 * @return A new matcher for the same log format, with its own state, so
+	 *         that it can be used independently of this matcher.
+	 */
+	LayoutMatcher copy() {
+		return new LayoutMatcher(tokens, literals, fields, timestampPattern, timestampSpaces);
+	}
+
+	private static void addLiteral(final StringBuilder literal, final List<Integer> tokens,
+			final List<String> literals) {
+		if (literal.length() > 0) {
+			tokens.add(LITERAL);
+			literals.add(literal.toString());
+			literal.setLength(0);
+		}
+	}
+
+	/**
+	 * @param line
+	 *            Line to match.
+	 * @return Whether the entire line matches the log format.
+	 */
+	public boolean matches(final CharSequence line) {
+		text = line;
+		length = line.length();
+		failed.clear();
+		terminator = -1;
+		if (timestampMatcher != null)
+			timestampMatcher.reset(line);
+		return match(0, 0);
+	}
+
+	private boolean match(final int token, final int pos) {
+		if (token == tokens.length)
+			return pos == length;
+		final int key = token * (length + 1) + pos;
+		if (failed.get(key))
+			return false;
+		if (matchToken(token, pos))
+			return true;
+		failed.set(key);
+		return false;
+	}
+
+	private boolean matchToken(final int token, final int pos) {
+		switch (tokens[token]) {
+		case LITERAL:
+			return startsWith(literals[token], pos) && match(token + 1, pos + literals[token].length());
+		case SPACES: {
+			// [ ]+ is greedy
+			int end = pos;
+			while (end < length && text.charAt(end) == ' ')
+				++end;
+			for (; end > pos; --end)
+				if (match(token + 1, end))
+					return true;
+			return false;
+		}
+		default:
+			return matchField(token, tokens[token], pos);
+		}
+	}
+
+	private boolean matchField(final int token, final int field, final int pos) {
+		if (terminator < 0)
+			terminator = lineEnd(0);
+		final int limit = pos <= terminator ? terminator : lineEnd(pos);
+		switch (fields[field]) {
+		case DEFAULT:
+			// .*? is lazy, jump to the next possible delimiter.
+			for (int end = nextCandidate(token + 1, pos, limit); end >= 0; end = nextCandidate(token + 1, end + 1,
+					limit))
+				if (capture(token, field, pos, end))
+					return true;
+			return false;
+		case GREEDY:
+			// .* is greedy
+			for (int end = limit; end >= pos; --end)
+				if (isCandidate(token + 1, end) && capture(token, field, pos, end))
+					return true;
+			return false;
+		case NOSPACE: {
+			// \S* is greedy, then \s*? is lazy.
+			int nonSpace = pos;
+			while (nonSpace < length && !isWhitespace(text.charAt(nonSpace)))
+				++nonSpace;
+			int space = nonSpace;
+			while (space < length && isWhitespace(text.charAt(space)))
+				++space;
+			for (int end = nonSpace; end <= space; ++end)
+				if (isCandidate(token + 1, end) && capture(token, field, pos, end))
+					return true;
+			for (int end = nonSpace - 1; end >= pos; --end)
+				if (isCandidate(token + 1, end) && capture(token, field, pos, end))
+					return true;
+			return false;
+		}
+		case TIMESTAMP: {
+			// The timestamp contains a fixed number of spaces.
+			int bound = pos, spaces = 0;
+			while (bound < length && (text.charAt(bound) != ' ' || spaces++ < timestampSpaces))
+				++bound;
+			timestampMatcher.region(pos, bound);
+			if (!timestampMatcher.lookingAt())
+				return false;
+			final int first = timestampMatcher.end();
+			if (isCandidate(token + 1, first) && capture(token, field, pos, first))
+				return true;
+			for (int end = bound; end >= pos; --end)
+				if (end != first && isCandidate(token + 1, end)
+						&& timestampMatcher.region(pos, end).matches() && capture(token, field, pos, end))
+					return true;
+			return false;
+		}
+		default:
+			return false;
+		}
+	}
+
+	private boolean capture(final int token, final int field, final int start, final int end) {
+		starts[field] = start;
+		ends[field] = end;
+		return match(token + 1, end);
+	}
+
+	/**
+	 * @return Whether the given token may start at the given position, a quick
+	 *         check before trying to match the rest of the line.
+	 */
+	private boolean isCandidate(final int token, final int pos) {
+		if (token == tokens.length)
+			return pos == length;
+		switch (tokens[token]) {
+		case LITERAL:
+			return startsWith(literals[token], pos);
+		case SPACES:
+			return pos < length && text.charAt(pos) == ' ';
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * @return The first position at or after the given position where the
+	 *         given token may start, or -1 when there is none up to the limit.
+	 */
+	private int nextCandidate(final int token, final int from, final int limit) {
+		if (from > limit)
+			return -1;
+		final int pos;
+		if (token == tokens.length)
+			pos = length;
+		else if (tokens[token] == LITERAL)
+			pos = indexOf(literals[token], from);
+		else if (tokens[token] == SPACES)
+			pos = indexOf(" ", from);
+		else
+			pos = from;
+		return pos >= 0 && pos <= limit ? pos : -1;
+	}
+
+	/** Same as {@link String#startsWith(String, int)} for the text. */
+	private boolean startsWith(final String literal, final int pos) {
+		if (pos < 0 || pos + literal.length() > length)
+			return false;
+		for (int i = 0; i < literal.length(); ++i)
+			if (text.charAt(pos + i) != literal.charAt(i))
+				return false;
+		return true;
+	}
+
+	/** Same as {@link String#indexOf(String, int)} for the text. */
+	private int indexOf(final String literal, final int from) {
+		if (literal.isEmpty())
+			return from <= length ? Math.max(from, 0) : -1;
+		final char first = literal.charAt(0);
+		for (int i = Math.max(from, 0); i <= length - literal.length(); ++i)
+			if (text.charAt(i) == first && startsWith(literal, i))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * @return The position of the first line terminator at or after the given
+	 *         position, which a dot in a regular expression does not match.
+	 */
+	private int lineEnd(final int pos) {
+		for (int i = pos; i < length; ++i) {
+			final char c = text.charAt(i);
+			if (c <= '\r' ? c == '\n' || c == '\r' : c >= '\u0085' && (c == '\u0085' || c == '\u2028' || c == '\u2029'))
+				return i;
+		}
+		return length;
+	}
+
+	/** Same as \s in a regular expression. */
+	static boolean isWhitespace(final char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	@Override
+	public int start() {
+		return 0;
+	}
+
+	@Override
+	public int start(final int group) {
+		return group == 0 ? 0 : starts[group - 1];
+	}
+
+	@Override
+	public int end() {
+		return length;
+	}
+
+	@Override
+	public int end(final int group) {
+		return group == 0 ? length : ends[group - 1];
+	}
+
+	@Override
+	public String group() {
+		return text.toString();
+	}
+
+	@Override
+	public String group(final int group) {
+		return group == 0 ? text.toString() : text.subSequence(starts[group - 1], ends[group - 1]).toString();
+	}
+
+	@Override
+	public int groupCount() {
+		return fields.length;
+	}
+}
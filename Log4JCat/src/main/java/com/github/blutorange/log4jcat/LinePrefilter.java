@@ -0,0 +1,108 @@
+package com.github.blutorange.log4jcat;
+
+import java.util.List;
+
+/**
+ * A quick check whether a line may start a log entry, derived from the start
+ * of the log format: the literal text the line must start with, and the kind
+ * of character that must follow it. Lines rejected by this check, such as the
+ * lines of a stack trace, do not need to be matched against the entire log
+ * format.
+ */
+final class LinePrefilter {
+	/** Kind of character that must follow the prefix. */
+	private enum Next {
+		ANY,
+		SPACE,
+		NONSPACE,
+		DIGIT;
+	}
+
+	/** Date format letters of numeric fields, see SimpleDateFormat. */
+	private static final String NUMERIC_DATE_CHARS = "ydHkKhmsSDFwWu";
+	/** Date format letters of text fields, see SimpleDateFormat. */
+	private static final String TEXT_DATE_CHARS = "GEazZX";
+
+	private final String prefix;
+	private final Next next;
+
+	private LinePrefilter(final String prefix, final Next next) {
+		this.prefix = prefix;
+		this.next = next;
+	}
+
+	/**
+	 * @param format
+	 *            The log format with each keyword replaced by its index, as
+	 *            used by {@link Log4JReader} to build its regular expression.
+	 * @param keywordFields
+	 *            How each keyword is matched, by the index of the keyword.
+	 * @param timestampFormat
+	 *            The date format of timestamps, may be <code>null</code> when
+	 *            there is no timestamp.
+	 * @return The prefilter for the log format.
+	 */
+	static LinePrefilter compile(final String format, final List<LayoutMatcher.Field> keywordFields,
+			final String timestampFormat) {
+		final StringBuilder prefix = new StringBuilder();
+		for (int i = 0; i < format.length(); ++i) {
+			final char c = format.charAt(i);
+			if (c >= '0' && c <= '9') {
+				int j = i;
+				while (j < format.length() && format.charAt(j) >= '0' && format.charAt(j) <= '9')
+					++j;
+				final LayoutMatcher.Field field = keywordFields.get(Integer.parseInt(format.substring(i, j)));
+				return new LinePrefilter(prefix.toString(),
+						field == LayoutMatcher.Field.TIMESTAMP ? timestampStart(timestampFormat) : Next.ANY);
+			}
+			if (c == ' ')
+				return new LinePrefilter(prefix.toString(), Next.SPACE);
+			if (c == '*' || c == '\\')
+				break;
+			prefix.append(c);
+		}
+		return new LinePrefilter(prefix.toString(), Next.ANY);
+	}
+
+	/**
+	 * Numeric date fields can only be parsed when they start with a digit, so
+	 * a line with anything else there would not even get a valid timestamp.
+	 */
+	private static Next timestampStart(final String timestampFormat) {
+		if (timestampFormat == null || timestampFormat.isEmpty())
+			return Next.ANY;
+		final char first = timestampFormat.charAt(0);
+		if (NUMERIC_DATE_CHARS.indexOf(first) >= 0)
+			return Next.DIGIT;
+		if (first == 'M')
+			return timestampFormat.startsWith("MMM") ? Next.NONSPACE : Next.DIGIT;
+		if (TEXT_DATE_CHARS.indexOf(first) >= 0)
+			return Next.NONSPACE;
+		return Next.ANY;
+	}
+
+	/**
+	 * @param line
+	 *            Line to check.
+	 * @return <code>false</code> when the line cannot start a log entry,
+	 *         <code>true</code> when it may.
+	 */
+	public boolean accepts(final CharSequence line) {
+		final int pos = prefix.length();
+		if (line.length() < pos)
+			return false;
+		for (int i = 0; i < pos; ++i)
+			if (line.charAt(i) != prefix.charAt(i))
+				return false;
+		switch (next) {
+		case SPACE:
+			return pos < line.length() && line.charAt(pos) == ' ';
+		case NONSPACE:
+			return pos < line.length() && !LayoutMatcher.isWhitespace(line.charAt(pos));
+		case DIGIT:
+			return pos < line.length() && Character.isDigit(line.charAt(pos));
+		default:
+			return true;
+		}
+	}
+}
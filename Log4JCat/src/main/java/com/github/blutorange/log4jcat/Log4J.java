@@ -1,5 +1,7 @@
 package com.github.blutorange.log4jcat;
 
+import java.io.File;
+import java.nio.file.Path;
 import java.time.ZoneOffset;
 import java.util.Locale;
 import java.util.TimeZone;
@@ -24,9 +26,24 @@ import org.eclipse.jdt.annotation.Nullable;
 public final class Log4J {
 	private static long MIN_THRESHOLD = 1000L; // 1 KB
 	private static long DEFAULT_THRESHOLD = 10000L; // 10 KB
+	private static long MAX_ADAPTIVE_THRESHOLD = 10000000L; // 10 MB
+	static final int DEFAULT_CONTINUATION_LIMIT = 100000; // 100 K chars
+
+	/** Search key for the relative time of a log entry, written by %r. */
+	public static final String RELATIVE_TIME = "RELATIVETIME";
+	/** Search key for the sequence number of a log entry, written by %sn. */
+	public static final String SEQUENCE_NUMBER = "log4jid";
 
 	private final String patternLayout;
 	private long threshold;
+	private boolean adaptiveThreshold;
+	private long maxDisorder;
+	private SearchMode searchMode;
+	private boolean index;
+	private int cacheSize;
+	private ContinuationMode continuationMode;
+	private int continuationLimit;
+	private String searchKey;
 	private TimeZone timeZone;
 	private Locale locale;
 
@@ -95,6 +112,152 @@ public final class Log4J {
 		return this;
 	}
 
+	/**
+	 * Whether the log file trimmer chooses the {@link #threshold(long)} on its
+	 * own. It then measures how long it takes to seek to a position and read a
+	 * log entry there, how long it takes to read a byte sequentially, and the
+	 * average size of a log entry. From this it picks the threshold at which a
+	 * linear search becomes faster than narrowing down the range further. The
+	 * configured threshold is used until enough has been measured. The chosen
+	 * value can be checked with {@link Log4JCat#getThreshold()}. Defaults to
+	 * <code>false</code>.
+	 *
+	 * @param adaptiveThreshold
+	 *            Whether to choose the threshold automatically.
+	 * @return this for chaining.
+	 */
+	@NonNull
+	public Log4J adaptiveThreshold(final boolean adaptiveThreshold) {
+		this.adaptiveThreshold = adaptiveThreshold;
+		return this;
+	}
+
+	/**
+	 * By default, the log entries must be sorted by their timestamp. Some
+	 * appenders, such as asynchronous ones, may write log entries slightly out
+	 * of order. This sets by how much the timestamp of a log entry may lie
+	 * before the timestamp of any earlier log entry. The search then scans a
+	 * correspondingly larger range at its end, so that it still finds the
+	 * first log entry after or on the given date. Defaults to 0.
+	 *
+	 * @param maxDisorder
+	 *            The maximum disorder in milliseconds.
+	 * @return this for chaining.
+	 */
+	@NonNull
+	public Log4J maxDisorder(final long maxDisorder) {
+		this.maxDisorder = maxDisorder;
+		return this;
+	}
+
+	/**
+	 * How the search range is narrowed down before switching to a linear
+	 * search. Defaults to {@link SearchMode#BISECTION}.
+	 *
+	 * @param searchMode
+	 *            The search mode to use.
+	 * @return this for chaining.
+	 */
+	@NonNull
+	public Log4J searchMode(@Nullable final SearchMode searchMode) {
+		this.searchMode = searchMode;
+		return this;
+	}
+
+	/**
+	 * Whether to keep a sparse index of each log file in a sidecar file, named
+	 * like the log file with the extension <code>.l4jidx</code> appended. With
+	 * an up-to-date index, a search only needs to scan a range of about the
+	 * size of the {@link #threshold(long)}. The index is made the first time a
+	 * log file is searched, and extended when the log file grew since then.
+	 * This only works for inputs opened from a {@link File} or {@link Path}
+	 * via the {@link InputFactory}. Defaults to <code>false</code>.
+	 *
+	 * @param index
+	 *            Whether to use an index.
+	 * @return this for chaining.
+	 */
+	@NonNull
+	public Log4J index(final boolean index) {
+		this.index = index;
+		return this;
+	}
+
+	/**
+	 * The log file trimmer can remember the log entries it read while
+	 * searching a log file, so that later searches of the same log file need
+	 * to read less. This sets the maximum number of log entries to remember,
+	 * for all log files together. The least recently searched log files are
+	 * forgotten first. A log file is recognized by its file key or path, its
+	 * size and its modification time. This only works for inputs opened from a
+	 * {@link File} or {@link Path} via the {@link InputFactory}. Defaults to 0,
+	 * which disables the cache.
+	 *
+	 * @param cacheSize
+	 *            Maximum number of log entries to remember.
+	 * @return this for chaining.
+	 */
+	@NonNull
+	public Log4J cache(final int cacheSize) {
+		this.cacheSize = cacheSize;
+		return this;
+	}
+
+	/**
+	 * By default, log entries are searched by their timestamp. This sets
+	 * another field of the log entries to search by instead, such as
+	 * {@link #RELATIVE_TIME} or {@link #SEQUENCE_NUMBER}. The field must hold
+	 * an integer that does not decrease from one log entry to the next. The
+	 * dates passed to the search methods of {@link Log4JCat} are then values
+	 * of this field. Log entries whose field is not an integer are treated as
+	 * if it were 0. Defaults to <code>null</code>, which searches by
+	 * timestamp.
+	 *
+	 * @param searchKey
+	 *            The keyword or property name of the field to search by.
+	 * @return this for chaining.
+	 * @throws IllegalArgumentException
+	 *             In {@link #get()}, when the pattern layout has no such
+	 *             field.
+	 */
+	@NonNull
+	public Log4J searchKey(@Nullable final String searchKey) {
+		this.searchKey = searchKey;
+		return this;
+	}
+
+	/**
+	 * What to do with the continuation lines of a log entry, such as the lines
+	 * of a stack trace, when reading log entries. They can be added to the
+	 * message, added up to the {@link #continuationLimit(int)}, or skipped.
+	 * Defaults to {@link ContinuationMode#TRUNCATE}.
+	 *
+	 * @param continuationMode
+	 *            The continuation mode to use.
+	 * @return this for chaining.
+	 */
+	@NonNull
+	public Log4J continuationMode(@Nullable final ContinuationMode continuationMode) {
+		this.continuationMode = continuationMode;
+		return this;
+	}
+
+	/**
+	 * The maximum number of characters of continuation lines, including line
+	 * separators, that are added to the message of a log entry, when the
+	 * {@link #continuationMode(ContinuationMode)} is
+	 * {@link ContinuationMode#TRUNCATE}. Defaults to 100000.
+	 *
+	 * @param continuationLimit
+	 *            The maximum number of characters.
+	 * @return this for chaining.
+	 */
+	@NonNull
+	public Log4J continuationLimit(final int continuationLimit) {
+		this.continuationLimit = continuationLimit;
+		return this;
+	}
+
 	/**
 	 * @return The actual log file trimmer with the configured options.
 	 */
@@ -104,17 +267,32 @@ public final class Log4J {
 			threshold = DEFAULT_THRESHOLD;
 		else if (threshold < MIN_THRESHOLD)
 			threshold = 1000L;
+		if (maxDisorder < 0)
+			maxDisorder = 0;
 		if (timeZone == null)
 			timeZone = TimeZone.getTimeZone(ZoneOffset.UTC);
 		if (locale == null)
 			locale = Locale.ENGLISH;
-		final ILogReaderFactory factory = new Log4JReaderFactory(patternLayout, locale, timeZone);
-		return new Log4JCat(factory, threshold);
+		if (searchMode == null)
+			searchMode = SearchMode.BISECTION;
+		if (continuationMode == null)
+			continuationMode = ContinuationMode.TRUNCATE;
+		if (continuationLimit <= 0)
+			continuationLimit = DEFAULT_CONTINUATION_LIMIT;
+		final ILogReaderFactory factory = new Log4JReaderFactory(patternLayout, locale, timeZone, continuationMode,
+				continuationLimit, searchKey);
+		final ThresholdTuner tuner = adaptiveThreshold
+				? new ThresholdTuner(threshold, MIN_THRESHOLD, MAX_ADAPTIVE_THRESHOLD) : null;
+		// Everything that changes the timestamps read from the log file.
+		final String fingerprint = String.join("\u0000", patternLayout, timeZone.getID(), locale.toLanguageTag(),
+				searchKey != null ? searchKey : "");
+		return new Log4JCat(factory, threshold, maxDisorder, searchMode, index, cacheSize, tuner, fingerprint);
 	}
 
 	/**
 	 * Returns a new builder with the given pattern layout and the default
-	 * values for the time zone (UTC), locale (English), and threshold (10 KB).
+	 * values for the time zone (UTC), locale (English), threshold (10 KB), and
+	 * search mode (bisection).
 	 *
 	 * @param patternLayout
 	 *            The pattern layout, ie. the log file format. See <a href=
@@ -6,28 +6,85 @@
  */
 package com.github.blutorange.log4jcat;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import org.slf4j.event.LoggingEvent;
 
 /**
  * The log file trimmer. Instances are constructed via {@link Log4JCat}. This
  * class provides several methods for searching for log entries based on their
- * date, such as {@link #find(IRandomAccessInput, long)}.
+ * date, such as {@link #find(IRandomAccessInput, long)}. When another field to
+ * search by is configured with {@link Log4J#searchKey(String)}, dates are
+ * values of that field instead.
  *
  * @author madgaksha
  * @see Log4J
  */
 public final class Log4JCat {
+	/** Number of log files whose index is kept in memory. */
+	private static final int MAX_INDEXES = 16;
 
 	private final long threshold;
+	private final long maxDisorder;
+	private final SearchMode searchMode;
+	/** Indices loaded so far by file identity, <code>null</code> when disabled. */
+	private final Map<Object, TimestampIndex> indexes;
+	private final ProbeCache cache;
+	private final ThresholdTuner tuner;
 	private final ILogReaderFactory factory;
+	/** Settings the timestamps of the index depend on, see {@link TimestampIndex}. */
+	private final String fingerprint;
 
-	Log4JCat(final ILogReaderFactory factory, final long threshold) {
+	Log4JCat(final ILogReaderFactory factory, final long threshold, final long maxDisorder,
+			final SearchMode searchMode, final boolean index, final int cacheSize, final ThresholdTuner tuner,
+			final String fingerprint) {
 		this.factory = factory;
 		this.threshold = threshold;
+		this.maxDisorder = maxDisorder;
+		this.searchMode = searchMode;
+		this.indexes = index ? new LinkedHashMap<Object, TimestampIndex>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Entry<Object, TimestampIndex> eldest) {
+				return size() > MAX_INDEXES;
+			}
+		} : null;
+		this.cache = cacheSize > 0 ? new ProbeCache(cacheSize) : null;
+		this.tuner = tuner;
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * @return The threshold in bytes at which the search switches to a linear
+	 *         scan. With an adaptive threshold, this is the value currently
+	 *         chosen based on the searches performed so far.
+	 * @see Log4J#threshold(long)
+	 * @see Log4J#adaptiveThreshold(boolean)
+	 */
+	public long getThreshold() {
+		return tuner != null ? tuner.getThreshold() : threshold;
 	}
 
 	/**
@@ -52,11 +109,165 @@ public final class Log4JCat {
 		}
 	}
 
+	/**
+	 * Same as {@link #each(IRandomAccessInput, Predicate)}, but processes the
+	 * log file in parallel. The log file is cut into the given number of
+	 * shards, each starting at a log entry. Each shard is read with its own
+	 * reader and its own input, and passed to the mapper on the given
+	 * executor. This only works for inputs opened from a {@link File},
+	 * {@link java.nio.file.Path} or {@link CharSequence} via the
+	 * {@link InputFactory}, other inputs are processed as a single shard.
+	 *
+	 * @param input
+	 *            Log file input. Read from its current position to its end.
+	 * @param shards
+	 *            Number of shards to cut the log file into.
+	 * @param executor
+	 *            Executor for processing the shards. Uses the
+	 *            {@link ForkJoinPool#commonPool()} when <code>null</code>.
+	 * @param mapper
+	 *            Called for each logging event, possibly from several threads
+	 *            at once. Returns the result for the logging event, or
+	 *            <code>null</code> to skip it. When it throws, the other
+	 *            shards stop early and the exception is rethrown.
+	 * @return The results of the mapper for all logging events, in the order
+	 *         of the logging events in the log file.
+	 * @throws IOException
+	 *             When the file could not be read.
+	 */
+	@NonNull
+	public <T> List<T> eachParallel(@NonNull final IRandomAccessInput input, final int shards,
+			@Nullable final Executor executor, @NonNull final Function<LoggingEvent, T> mapper) throws IOException {
+		final long[] bounds = shardBounds(input, shards);
+		final List<CompletableFuture<List<T>>> futures = new ArrayList<>(bounds.length - 1);
+		// Set when a shard fails, the other shards then stop early.
+		final AtomicBoolean failed = new AtomicBoolean();
+		for (int i = 0; i + 1 < bounds.length; ++i) {
+			final boolean duplicate = i > 0;
+			final long start = bounds[i];
+			final long end = bounds[i + 1];
+			futures.add(CompletableFuture
+					.supplyAsync(() -> eachShard(input, duplicate, start, end, mapper, failed),
+							executor != null ? executor : ForkJoinPool.commonPool())
+					.whenComplete((result, e) -> {
+						if (e != null)
+							failed.set(true);
+					}));
+		}
+		// Waits for all shards, so that none still reads the input afterwards.
+		final List<T> results = new ArrayList<>();
+		Throwable failure = null;
+		for (final CompletableFuture<List<T>> future : futures) {
+			try {
+				final List<T> shard = future.join();
+				if (failure == null)
+					results.addAll(shard);
+			}
+			catch (final CompletionException e) {
+				if (failure == null)
+					failure = e.getCause();
+			}
+		}
+		if (failure instanceof UncheckedIOException)
+			throw ((UncheckedIOException) failure).getCause();
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		if (failure instanceof Error)
+			throw (Error) failure;
+		if (failure != null)
+			throw new CompletionException(failure);
+		return results;
+	}
+
+	/**
+	 * @return The positions where the shards start, from the current position
+	 *         of the input, followed by the length of the input.
+	 */
+	private long[] shardBounds(final IRandomAccessInput input, final int shards) throws IOException {
+		final long start = input.tell();
+		final long size = input.length();
+		final long[] bounds = new long[Math.max(1, shards) + 1];
+		int count = 0;
+		bounds[count++] = start;
+		try (final IRandomAccessInput other = input instanceof ARandomAccessInput
+				? ((ARandomAccessInput) input).duplicate() : null) {
+			if (other != null) {
+				final ILogReader logReader = factory.create();
+				for (int i = 1; i < shards; ++i) {
+					final long pos = EventSpliterator.eventStartAfter(logReader, other,
+							start + (size - start) / shards * i);
+					if (pos < 0)
+						break;
+					if (pos > bounds[count - 1])
+						bounds[count++] = pos;
+				}
+			}
+		}
+		bounds[count++] = size;
+		return Arrays.copyOf(bounds, count);
+	}
+
+	private <T> List<T> eachShard(final IRandomAccessInput input, final boolean duplicate, final long start,
+			final long end, final Function<LoggingEvent, T> mapper, final AtomicBoolean failed) {
+		final List<T> results = new ArrayList<>();
+		if (failed.get())
+			return results;
+		try (final IRandomAccessInput other = duplicate ? ((ARandomAccessInput) input).duplicate() : null) {
+			final IRandomAccessInput shard = other != null ? other : input;
+			final ILogReader logReader = factory.create();
+			LoggingEvent event;
+			shard.seek(start);
+			while (!failed.get() && shard.tell() < end && (event = logReader.processSingle(shard)) != null) {
+				final T result = mapper.apply(event);
+				if (result != null)
+					results.add(result);
+			}
+		}
+		catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the log entries from the first log entry after (or equal to) the
+	 * start date up to, but excluding, the first log entry after (or equal to)
+	 * the end date. The log entries are read lazily. The stream can be
+	 * processed in parallel, it is then split at the start of a log entry and
+	 * each part is read with its own reader and its own input. This only works
+	 * for inputs opened from a {@link File}, {@link java.nio.file.Path} or
+	 * {@link CharSequence} via the {@link InputFactory}, other inputs are read
+	 * sequentially. The stream should be closed, which closes the inputs
+	 * opened for the parts, but not the given input.
+	 *
+	 * @param input
+	 *            Log file to read. Must not be used until the stream has been
+	 *            processed.
+	 * @param start
+	 *            The start date, as a unix timestamp.
+	 * @param end
+	 *            The end date, as a unix timestamp.
+	 * @return A stream of the log entries between both dates.
+	 * @throws IOException
+	 *             When the log file could not be read. Errors while processing
+	 *             the stream are thrown as an
+	 *             {@link UncheckedIOException}.
+	 * @see #findRange(IRandomAccessInput, long, long)
+	 */
+	@NonNull
+	public Stream<LoggingEvent> stream(@NonNull final IRandomAccessInput input, final long start, final long end)
+			throws IOException {
+		final long[] range = findRange(input, start, end);
+		final EventSpliterator spliterator = new EventSpliterator(factory, input, range[0], range[1]);
+		return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+	}
+
 	/**
 	 * Takes a log file and a UNIX timestamp. Some log entries lie before the
 	 * given date, and some lie after the given date. This method finds the
-	 * first log entry that lies after or on the given date. Call this method
-	 * twice to perform a head-tail trim.
+	 * first log entry that lies after or on the given date. Use
+	 * {@link #findRange(IRandomAccessInput, long, long)} to perform a head-tail
+	 * trim.
 	 *
 	 * @param input
 	 *            Log file to trim. Use the methods provided by
@@ -73,58 +284,335 @@ public final class Log4JCat {
 	 * @see Timestamp
 	 */
 	public long find(@NonNull final IRandomAccessInput input, final long date) throws IOException {
-		final LoggingEvent event;
+		return findAll(input, new long[] { date })[0];
+	}
+
+	/**
+	 * Same as calling {@link #find(IRandomAccessInput, long)} for the start
+	 * and the end date, but the search for the end date reuses the log entries
+	 * already read while searching for the start date. When the end date does
+	 * not lie before the start date, the search for the end date starts at the
+	 * position found for the start date.
+	 *
+	 * @param input
+	 *            Log file to trim. Use the methods provided by
+	 *            {@link InputFactory}.
+	 * @param start
+	 *            The start date to search the log file for, as a unix
+	 *            timestamp.
+	 * @param end
+	 *            The end date to search the log file for, as a unix timestamp.
+	 * @return An array with two elements, the position of the first log entry
+	 *         after (or equal to) the start date, and the position of the
+	 *         first log entry after (or equal to) the end date.
+	 * @throws IOException
+	 *             When the log file could not be read.
+	 * @see #find(IRandomAccessInput, long)
+	 */
+	@NonNull
+	public long[] findRange(@NonNull final IRandomAccessInput input, final long start, final long end)
+			throws IOException {
+		return findAll(input, new long[] { start, end });
+	}
+
+	/**
+	 * Same as calling {@link #find(IRandomAccessInput, long)} for each date,
+	 * but all searches share the log entries read so far. Each search narrows
+	 * down the range for the following searches, and starts at the position
+	 * found for the previous date. This works best when the dates are sorted
+	 * in ascending order, eg. for slicing a log file into hours.
+	 *
+	 * @param input
+	 *            Log file to trim. Use the methods provided by
+	 *            {@link InputFactory}.
+	 * @param dates
+	 *            The dates to search the log file for, as unix timestamps.
+	 *            Should be sorted in ascending order.
+	 * @return An array with the position of the first log entry after (or
+	 *         equal to) each date, in the same order as the dates.
+	 * @throws IOException
+	 *             When the log file could not be read.
+	 * @see #find(IRandomAccessInput, long)
+	 */
+	@NonNull
+	public long[] findAll(@NonNull final IRandomAccessInput input, @NonNull final long[] dates) throws IOException {
 		final ILogReader logReader = factory.create();
-		long pos1, pos2, posCur, size;
+		final ProbeCache.Key key = cacheKey(input);
+		final NavigableMap<Long, Long> probes = new TreeMap<>();
+		final TimestampIndex timestampIndex = openIndex(logReader, input);
+		final long[] positions = new long[dates.length];
+		for (final long date : dates) {
+			if (timestampIndex != null)
+				timestampIndex.bracket(date, probes);
+			if (key != null)
+				cache.bracket(key, date, probes);
+		}
+		for (int i = 0; i < dates.length; ++i) {
+			final long from = i > 0 && dates[i] >= dates[i - 1] ? positions[i - 1] : 0L;
+			positions[i] = maxDisorder > 0 ? findDisordered(logReader, input, dates[i], from, probes)
+					: find(logReader, input, dates[i], from, probes);
+		}
+		if (key != null)
+			cache.put(key, probes);
+		return positions;
+	}
+
+	/**
+	 * Performs the actual search.
+	 *
+	 * @param from
+	 *            A position known to lie before or at the position to be
+	 *            found.
+	 * @param probes
+	 *            Map between the starting position of the log entries already
+	 *            read and their timestamp. Used to narrow down the initial
+	 *            search range, and updated with the log entries read.
+	 */
+	private long find(final ILogReader logReader, final IRandomAccessInput input, final long date, final long from,
+			final NavigableMap<Long, Long> probes) throws IOException {
+		long pos1, pos2, posCur, size, width, time1, time2, nanos;
+		boolean bisect;
+		final long scanThreshold = getThreshold();
 		size = input.length();
+		if (!probes.containsKey(0L)) {
+			input.seek(0);
+			final long time = logReader.processTimeStamp(input);
+			input.seek(0);
+			if (time == ILogReader.NO_EVENT)
+				return 0;
+			probes.put(0L, time);
+		}
+		if (probes.get(0L) >= date)
+			return 0;
+		if (searchMode == SearchMode.INTERPOLATION && probes.lastEntry().getValue() < date
+				&& probes.lastKey() < size - scanThreshold)
+			probeLast(logReader, input, size, scanThreshold, probes);
+		// Narrow down the search range with the log entries we already know.
 		pos1 = 0;
 		pos2 = size - 1;
-		event = logReader.processSingle(input);
-		input.seek(0);
-		if (event == null || event.getTimeStamp() >= date)
-			return 0;
+		time1 = probes.get(0L);
+		time2 = Long.MIN_VALUE;
+		for (final Entry<Long, Long> probe : probes.entrySet()) {
+			if (probe.getValue() >= date) {
+				pos2 = probe.getKey();
+				time2 = probe.getValue();
+				break;
+			}
+			pos1 = probe.getKey();
+			time1 = probe.getValue();
+		}
+		if (from >= pos2)
+			return from;
+		pos1 = Math.max(pos1, from);
+		bisect = searchMode != SearchMode.INTERPOLATION || time2 <= time1;
 		do {
-			if (pos2 - pos1 < threshold) {
+			if (pos2 - pos1 < scanThreshold) {
 				// Narrowed it down enough, scan the rest sequentially.
-				return scanForStart(logReader, input, pos1, pos2, date);
+				return scanForStart(logReader, input, pos1, pos2, date, probes);
 			}
-			// Binary search.
-			posCur = pos1 + (pos2 - pos1) / 2;
+			// Binary or interpolation search.
+			width = pos2 - pos1;
+			posCur = bisect ? pos1 + width / 2 : interpolate(pos1, pos2, time1, time2, date);
+			nanos = System.nanoTime();
 			input.seek(posCur);
 			seekToStartOfLine(input);
 			logReader.seekToNextEvent(input);
 			posCur = input.tell();
 			if (pos1 == posCur || pos2 == posCur) {
-				return scanForStart(logReader, input, pos1, pos2, date);
+				return scanForStart(logReader, input, pos1, pos2, date, probes);
+			}
+			if (bisect) {
+				// Either half is probed next, read both while this entry is parsed.
+				prefetch(input, pos1 + (posCur - pos1) / 2, posCur - pos1, scanThreshold);
+				prefetch(input, posCur + (pos2 - posCur) / 2, pos2 - posCur, scanThreshold);
 			}
-			switch (isStartPosition(logReader, input, date)) {
+			final int direction = isStartPosition(logReader, input, date, probes);
+			if (tuner != null)
+				tuner.probed(System.nanoTime() - nanos);
+			switch (direction) {
 			case -1: // need to go further to the beginning of the file
 				pos2 = posCur;
+				time2 = probes.get(posCur);
 				break;
 			case 0:
 				return input.tell();
 			case 1: // need to go further to the end of the file
 				pos1 = posCur;
+				time1 = probes.get(posCur);
 				break;
 			default:
 				// Does not contain any matching events.
 				return size - 1;
 			}
+			// Bisect once when the guess did not even halve the range.
+			if (searchMode == SearchMode.INTERPOLATION)
+				bisect = time2 <= time1 || (!bisect && pos2 - pos1 > width / 2);
 		}
 		while (true);
 	}
 
+	/**
+	 * Performs the search when the timestamps may be out of order by up to
+	 * {@link #maxDisorder}. No log entry before the first log entry on or after
+	 * <code>date - maxDisorder</code> lies on or after the date, so the search
+	 * for that date is followed by a linear scan for the given date.
+	 */
+	private long findDisordered(final ILogReader logReader, final IRandomAccessInput input, final long date,
+			final long from, final NavigableMap<Long, Long> probes) throws IOException {
+		final long early = date > Long.MIN_VALUE + maxDisorder ? date - maxDisorder : Long.MIN_VALUE;
+		final long start = find(logReader, input, early, from, probes);
+		final long last = input.length() - 1;
+		return start < last ? scanForStart(logReader, input, start, last, date, probes) : start;
+	}
+
+	/**
+	 * Guesses the position of the target date, assuming the log entries
+	 * between both positions were written at a constant rate. The guess is
+	 * kept away from the boundaries so that the range always shrinks.
+	 */
+	private static long interpolate(final long pos1, final long pos2, final long time1, final long time2,
+			final long target) {
+		final long width = pos2 - pos1;
+		final double fraction = ((double) target - time1) / ((double) time2 - time1);
+		final long guess = pos1 + (long) (fraction * width);
+		return Math.max(pos1 + width / 8, Math.min(pos2 - width / 8, guess));
+	}
+
+	/**
+	 * Reads the log entries near the end of the file, so that the
+	 * interpolation search knows the timestamp of the last log entry.
+	 */
+	private void probeLast(final ILogReader logReader, final IRandomAccessInput input, final long size,
+			final long scanThreshold, final NavigableMap<Long, Long> probes) throws IOException {
+		long pos, time;
+		input.seek(Math.max(0, size - scanThreshold));
+		seekToStartOfLine(input);
+		if (logReader.seekToNextEvent(input)) {
+			pos = input.tell();
+			while ((time = logReader.processTimeStamp(input)) != ILogReader.NO_EVENT) {
+				probes.put(pos, time);
+				pos = input.tell();
+			}
+		}
+		input.seek(0);
+	}
+
+	/**
+	 * Lets the input read ahead at the probe of a range, unless the range is
+	 * small enough to be scanned instead.
+	 */
+	private static void prefetch(final IRandomAccessInput input, final long probe, final long width,
+			final long scanThreshold) {
+		if (width >= scanThreshold && input instanceof ARandomAccessInput)
+			((ARandomAccessInput) input).prefetch(probe);
+	}
+
+	/**
+	 * @return The key for the probe cache, or <code>null</code> when the cache
+	 *         is disabled or the input is not backed by a file.
+	 */
+	private ProbeCache.Key cacheKey(final IRandomAccessInput input) throws IOException {
+		final File file = cache != null && input instanceof ARandomAccessInput
+				? ((ARandomAccessInput) input).getFile() : null;
+		return file != null ? ProbeCache.keyOf(file, input.length()) : null;
+	}
+
+	/**
+	 * Gets the index of the log file, from memory or from its sidecar file,
+	 * and brings it up to date when the log file changed. When the log file
+	 * only grew, the index is extended instead of being made anew.
+	 *
+	 * @return The index, or <code>null</code> when the index is disabled or
+	 *         the input is not backed by a file, or by a temporary file.
+	 */
+	private TimestampIndex openIndex(final ILogReader logReader, final IRandomAccessInput input)
+			throws IOException {
+		// Temporary files are deleted on close, along with the index we would make.
+		final File file = indexes != null && input instanceof ARandomAccessInput
+				&& !((ARandomAccessInput) input).isTemporary() ? ((ARandomAccessInput) input).getFile() : null;
+		if (file == null)
+			return null;
+		final TimestampIndex timestampIndex = loadIndex(file);
+		synchronized (timestampIndex) {
+			return updateIndex(logReader, input, file, timestampIndex);
+		}
+	}
+
+	/**
+	 * @return The index of the log file kept in memory, or the index loaded
+	 *         from the sidecar file when there is none yet.
+	 */
+	private TimestampIndex loadIndex(final File file) throws IOException {
+		final Object identity = ProbeCache.identityOf(file);
+		synchronized (indexes) {
+			TimestampIndex timestampIndex = indexes.get(identity);
+			if (timestampIndex == null) {
+				timestampIndex = TimestampIndex.of(file, Math.max(1L, threshold / 2), fingerprint);
+				indexes.put(identity, timestampIndex);
+			}
+			return timestampIndex;
+		}
+	}
+
+	private TimestampIndex updateIndex(final ILogReader logReader, final IRandomAccessInput input, final File file,
+			final TimestampIndex timestampIndex) throws IOException {
+		final long spacing = timestampIndex.getSpacing();
+		final long size = input.length();
+		final long lastModified = file.lastModified();
+		if (timestampIndex.isUpToDate(size, lastModified))
+			return timestampIndex;
+		if (timestampIndex.getLastOffset() >= 0 && (timestampIndex.getSize() > size || timestampIndex
+				.getLastTimeStamp() != timeStampAt(logReader, input, timestampIndex.getLastOffset())))
+			timestampIndex.clear();
+		long pos, time;
+		long block = timestampIndex.getLastOffset() < 0 ? 0 : timestampIndex.getLastOffset() / spacing + 1;
+		for (; block * spacing < size; ++block) {
+			input.seek(block * spacing);
+			seekToStartOfLine(input);
+			if (!logReader.seekToNextEvent(input))
+				break;
+			pos = input.tell();
+			if (pos > timestampIndex.getLastOffset()
+					&& (time = logReader.processTimeStamp(input)) != ILogReader.NO_EVENT)
+				timestampIndex.add(pos, time);
+			// Skip the blocks covered by a long log entry.
+			block = Math.max(block, pos / spacing);
+		}
+		input.seek(0);
+		timestampIndex.update(size, lastModified);
+		timestampIndex.save();
+		return timestampIndex;
+	}
+
+	/**
+	 * @return The timestamp of the log entry at the given position, or
+	 *         {@link ILogReader#NO_EVENT} when no log entry starts there.
+	 */
+	private static long timeStampAt(final ILogReader logReader, final IRandomAccessInput input, final long pos)
+			throws IOException {
+		input.seek(pos);
+		if (!logReader.seekToNextEvent(input) || input.tell() != pos)
+			return ILogReader.NO_EVENT;
+		return logReader.processTimeStamp(input);
+	}
+
 	private long scanForStart(final ILogReader logReader, final IRandomAccessInput input, final long pos1,
-			final long pos2, final long target) throws IOException {
-		LoggingEvent event = null;
-		long pos;
+			final long pos2, final long target, final NavigableMap<Long, Long> probes) throws IOException {
+		long pos, time, events = 0;
+		final long nanos = System.nanoTime();
 		input.seek(pos1);
 		do {
 			pos = input.tell();
-			event = logReader.processSingle(input);
+			time = logReader.processTimeStamp(input);
+			if (time != ILogReader.NO_EVENT) {
+				probes.put(pos, time);
+				++events;
+			}
 		}
-		while (event.getTimeStamp() < target && input.tell() < pos2);
-		return event.getTimeStamp() >= target ? pos : input.isEof() ? pos2 + 1 : pos2;
+		while (time < target && input.tell() < pos2);
+		if (tuner != null)
+			tuner.scanned(input.tell() - pos1, events, System.nanoTime() - nanos);
+		return time >= target ? pos : input.isEof() ? pos2 + 1 : pos2;
 	}
 
 	private void seekToStartOfLine(final IRandomAccessInput input) throws IOException {
@@ -134,25 +622,30 @@ public final class Log4JCat {
 		}
 	}
 
-	private int isStartPosition(final ILogReader logReader, final IRandomAccessInput input, final long target)
-			throws IOException {
-		final LoggingEvent event, event2;
+	private int isStartPosition(final ILogReader logReader, final IRandomAccessInput input, final long target,
+			final NavigableMap<Long, Long> probes) throws IOException {
+		final long time, time2;
 		long pos;
-		event = logReader.processSingle(input);
 		pos = input.tell();
-		event2 = logReader.processSingle(input);
-		if (event != null && event2 != null) {
-			if (event.getTimeStamp() <= target && event2.getTimeStamp() > target) {
+		time = logReader.processTimeStamp(input);
+		if (time != ILogReader.NO_EVENT)
+			probes.put(pos, time);
+		pos = input.tell();
+		time2 = logReader.processTimeStamp(input);
+		if (time2 != ILogReader.NO_EVENT)
+			probes.put(pos, time2);
+		if (time != ILogReader.NO_EVENT && time2 != ILogReader.NO_EVENT) {
+			if (time < target && time2 >= target) {
 				input.seek(pos);
 				return 0;
 			}
-			return event.getTimeStamp() < target ? 1 : -1;
+			return time < target ? 1 : -1;
 		}
-		else if (event == null) {
+		else if (time == ILogReader.NO_EVENT) {
 			return -2;
 		}
 		else {
-			return event.getTimeStamp() < target ? 1 : -1;
+			return time < target ? 1 : -1;
 		}
 	}
 }
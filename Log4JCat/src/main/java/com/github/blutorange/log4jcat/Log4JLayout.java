@@ -0,0 +1,689 @@
+/* Zum Lesen von Logdateien mit einem bestimmer patternLayout-Format
+ * Nutzt dazu Code von Apache Chainsaw und Apache Log4J-Extras.
+ *
+ * https://logging.apache.org/chainsaw/
+ * https://logging.apache.org/log4j/extras/
+ */
+
+package com.github.blutorange.log4jcat;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.helpers.OptionConverter;
+import org.apache.log4j.pattern.ClassNamePatternConverter;
+import org.apache.log4j.pattern.DatePatternConverter;
+import org.apache.log4j.pattern.FileLocationPatternConverter;
+import org.apache.log4j.pattern.FormattingInfo;
+import org.apache.log4j.pattern.FullLocationPatternConverter;
+import org.apache.log4j.pattern.LevelPatternConverter;
+import org.apache.log4j.pattern.LineLocationPatternConverter;
+import org.apache.log4j.pattern.LineSeparatorPatternConverter;
+import org.apache.log4j.pattern.LiteralPatternConverter;
+import org.apache.log4j.pattern.LoggerPatternConverter;
+import org.apache.log4j.pattern.LoggingEventPatternConverter;
+import org.apache.log4j.pattern.MessagePatternConverter;
+import org.apache.log4j.pattern.MethodLocationPatternConverter;
+import org.apache.log4j.pattern.NDCPatternConverter;
+import org.apache.log4j.pattern.PatternParser;
+import org.apache.log4j.pattern.PropertiesPatternConverter;
+import org.apache.log4j.pattern.RelativeTimePatternConverter;
+import org.apache.log4j.pattern.SequenceNumberPatternConverter;
+import org.apache.log4j.pattern.ThreadPatternConverter;
+
+/**
+ * The compiled form of a pattern layout: the keywords in the order they occur
+ * in a line, the regular expression and the layout matcher for a line, the
+ * line prefilter, and the date format of the timestamps. Compiling a pattern
+ * layout is expensive, so compiled layouts are cached by pattern layout,
+ * locale and time zone, see {@link #of(String, Locale, TimeZone)}. Instances
+ * are immutable and shared between threads. The state needed for matching a
+ * line is created for each {@link Log4JReader}.
+ */
+final class Log4JLayout {
+	/** When there are more compiled layouts, the least recently used is dropped. */
+	private static final int MAX_CACHED = 256;
+
+	private static final Map<Key, Log4JLayout> CACHE = new LinkedHashMap<Key, Log4JLayout>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Key, Log4JLayout> eldest) {
+			return size() > MAX_CACHED;
+		}
+	};
+
+	/**
+	 * LogFilePatternReceiver can parse and tail log files, converting entries
+	 * into LoggingEvents. If the file doesn't exist when the receiver is
+	 * initialized, the receiver will look for the file once every 10 seconds.
+	 * <p>
+	 * This receiver relies on java.util.regex features to perform the parsing
+	 * of text in the log file, however the only regular expression field
+	 * explicitly supported is a glob-style wildcard used to ignore fields in
+	 * the log file if needed. All other fields are parsed by using the supplied
+	 * keywords.
+	 * <p>
+	 * <b>Features:</b><br>
+	 * - specify the URL of the log file to be processed<br>
+	 * - specify the timestamp format in the file (if one exists, using patterns
+	 * from {@link java.text.SimpleDateFormat})<br>
+	 * - specify the pattern (logFormat) used in the log file using keywords, a
+	 * wildcard character (*) and fixed text<br>
+	 * - 'tail' the file (allows the contents of the file to be continually read
+	 * and new events processed)<br>
+	 * - supports the parsing of multi-line messages and exceptions - 'hostname'
+	 * property set to URL host (or 'file' if not available) - 'application'
+	 * property set to URL path (or value of fileURL if not available)
+	 * <p>
+	 * <b>Keywords:</b><br>
+	 * TIMESTAMP<br>
+	 * LOGGER<br>
+	 * LEVEL<br>
+	 * THREAD<br>
+	 * CLASS<br>
+	 * FILE<br>
+	 * LINE<br>
+	 * METHOD<br>
+	 * RELATIVETIME<br>
+	 * MESSAGE<br>
+	 * NDC<br>
+	 * PROP(key)<br>
+	 * <p>
+	 * Use a * to ignore portions of the log format that should be ignored
+	 * <p>
+	 * Example:<br>
+	 * If your file's patternlayout is this:<br>
+	 * <b>%d %-5p [%t] %C{2} (%F:%L) - %m%n</b>
+	 * <p>
+	 * specify this as the log format:<br>
+	 * <b>TIMESTAMP LEVEL [THREAD] CLASS (FILE:LINE) - MESSAGE</b>
+	 * <p>
+	 * To define a PROPERTY field, use PROP(key)
+	 * <p>
+	 * Example:<br>
+	 * If you used the RELATIVETIME pattern layout character in the file, you
+	 * can use PROP(RELATIVETIME) in the logFormat definition to assign the
+	 * RELATIVETIME field as a property on the event.
+	 * <p>
+	 * If your file's patternlayout is this:<br>
+	 * <b>%r [%t] %-5p %c %x - %m%n</b>
+	 * <p>
+	 * specify this as the log format:<br>
+	 * <b>PROP(RELATIVETIME) [THREAD] LEVEL LOGGER * - MESSAGE</b>
+	 * <p>
+	 * Note the * - it can be used to ignore a single word or sequence of words
+	 * in the log file (in order for the wildcard to ignore a sequence of words,
+	 * the text being ignored must be followed by some delimiter, like '-' or
+	 * '[') - ndc is being ignored in the following example.
+	 * <p>
+	 * Assign a filterExpression in order to only process events which match a
+	 * filter. If a filterExpression is not assigned, all events are processed.
+	 * <p>
+	 * <b>Limitations:</b><br>
+	 * - no support for the single-line version of throwable supported by
+	 * patternlayout<br>
+	 * (this version of throwable will be included as the last line of the
+	 * message)<br>
+	 * - the relativetime patternLayout character must be set as a property:
+	 * PROP(RELATIVETIME)<br>
+	 * - messages should appear as the last field of the logFormat because the
+	 * variability in message content<br>
+	 * - exceptions are converted if the exception stack trace (other than the
+	 * first line of the exception)<br>
+	 * is stored in the log file with a tab followed by the word 'at' as the
+	 * first characters in the line<br>
+	 * - tailing may fail if the file rolls over.
+	 * <p>
+	 * <b>Example receiver configuration settings</b> (add these as params,
+	 * specifying a LogFilePatternReceiver 'plugin'):<br>
+	 * param: "timestampFormat" value="yyyy-MM-d HH:mm:ss,SSS"<br>
+	 * param: "logFormat" value="PROP(RELATIVETIME) [THREAD] LEVEL LOGGER * -
+	 * MESSAGE"<br>
+	 * param: "fileURL" value="file:///c:/events.log"<br>
+	 * param: "tailing" value="true"
+	 * <p>
+	 * This configuration will be able to process these sample events:<br>
+	 * 710 [ Thread-0] DEBUG first.logger first - <test> <test2>something
+	 * here</test2> <test3 blah=something/> <test4> <test5>something
+	 * else</test5> </test4></test><br>
+	 * 880 [ Thread-2] DEBUG first.logger third - <test> <test2>something
+	 * here</test2> <test3 blah=something/> <test4> <test5>something
+	 * else</test5> </test4></test><br>
+	 * 880 [ Thread-0] INFO first.logger first - infomsg-0<br>
+	 * java.lang.Exception: someexception-first<br>
+	 * at Generator2.run(Generator2.java:102)<br>
+	 *
+	 * @author Scott Deboy
+	 */
+	private static final List<String> KEYWORDS = Collections.unmodifiableList(Arrays.asList(Log4JReader.TIMESTAMP,
+			Log4JReader.LOGGER, Log4JReader.LEVEL, Log4JReader.THREAD, Log4JReader.CLASS, Log4JReader.FILE,
+			Log4JReader.LINE, Log4JReader.METHOD, Log4JReader.MESSAGE, Log4JReader.NDC));
+
+	private static final String PROP_START = "PROP(";
+	private static final String PROP_END = ")";
+
+	// all lines other than first line of exception begin with tab followed by
+	// 'at' followed by text
+	private static final String REGEXP_DEFAULT_WILDCARD = ".*?";
+	private static final String REGEXP_GREEDY_WILDCARD = ".*";
+	private static final String PATTERN_WILDCARD = "*";
+	private static final String NOSPACE_GROUP = "(\\S*\\s*?)";
+	private static final String DEFAULT_GROUP = "(" + REGEXP_DEFAULT_WILDCARD + ")";
+	private static final String GREEDY_GROUP = "(" + REGEXP_GREEDY_WILDCARD + ")";
+	private static final String MULTIPLE_SPACES_REGEXP = "[ ]+";
+
+	private static final String VALID_DATEFORMAT_CHARS = "GyMwWDdFEaHkKhmsSzZ";
+	private static final String VALID_DATEFORMAT_CHAR_PATTERN = "[" + VALID_DATEFORMAT_CHARS + "]";
+
+	private final String logFormat;
+	private final String timestampFormat;
+	private final SimpleDateFormat dateFormat;
+	private final String timestampPatternText;
+	private final List<String> matchingKeywords;
+	private final Pattern regexpPattern;
+	private final LayoutMatcher layoutMatcher;
+	private final LinePrefilter linePrefilter;
+	private final TimestampParser timestampParser;
+	private final int timestampGroup;
+
+	private Log4JLayout(final String patternLayout, final Locale locale, final TimeZone timeZone) {
+		logFormat = getLogFormatFromPatternLayout(patternLayout);
+		timestampFormat = getTimeStampFormat(patternLayout);
+		if (timestampFormat != null) {
+			dateFormat = new SimpleDateFormat(quoteTimeStampChars(timestampFormat), locale);
+			dateFormat.setTimeZone(timeZone);
+			timestampParser = TimestampParser.compile(timestampFormat, dateFormat);
+			timestampPatternText = convertTimestamp(timestampFormat);
+		}
+		else {
+			dateFormat = null;
+			timestampParser = null;
+			timestampPatternText = null;
+		}
+		final Compiled compiled = initialize();
+		matchingKeywords = Collections.unmodifiableList(compiled.matchingKeywords);
+		regexpPattern = compiled.regexpPattern;
+		layoutMatcher = compiled.layoutMatcher;
+		linePrefilter = compiled.linePrefilter;
+		timestampGroup = matchingKeywords.indexOf(Log4JReader.TIMESTAMP) + 1;
+	}
+
+	/**
+	 * @param patternLayout
+	 *            The pattern layout of the log file.
+	 * @param locale
+	 *            Locale of the timestamps.
+	 * @param timeZone
+	 *            Time zone of the timestamps.
+	 * @return The compiled layout, from the cache when it was compiled before.
+	 */
+	static Log4JLayout of(final String patternLayout, final Locale locale, final TimeZone timeZone) {
+		final Key key = new Key(patternLayout, locale, timeZone);
+		synchronized (CACHE) {
+			final Log4JLayout cached = CACHE.get(key);
+			if (cached != null)
+				return cached;
+		}
+		// Compiled outside the lock, so that other layouts can be looked up.
+		final Log4JLayout layout = new Log4JLayout(patternLayout, locale, timeZone);
+		synchronized (CACHE) {
+			final Log4JLayout previous = CACHE.putIfAbsent(key, layout);
+			return previous != null ? previous : layout;
+		}
+	}
+
+	/**
+	 * @return The keywords, in the order of the groups of a match.
+	 */
+	List<String> getMatchingKeywords() {
+		return matchingKeywords;
+	}
+
+	/**
+	 * @return The group of a match with the timestamp, or 0 when there is
+	 *         none.
+	 */
+	int getTimestampGroup() {
+		return timestampGroup;
+	}
+
+	/**
+	 * @return The regular expression for matching a line against the log
+	 *         format.
+	 */
+	Pattern getPattern() {
+		return regexpPattern;
+	}
+
+	/**
+	 * @return The quick check whether a line may start a log entry.
+	 */
+	LinePrefilter getLinePrefilter() {
+		return linePrefilter;
+	}
+
+	/**
+	 * @return A new matcher for the regular expression.
+	 */
+	Matcher newRegexpMatcher() {
+		return regexpPattern.matcher("");
+	}
+
+	/**
+	 * @return A new compiled layout matcher, or <code>null</code> when the
+	 *         log format is not supported by it.
+	 */
+	LayoutMatcher newLayoutMatcher() {
+		return layoutMatcher != null ? layoutMatcher.copy() : null;
+	}
+
+	/**
+	 * @return A new parser for the timestamps, or <code>null</code> when there
+	 *         are no timestamps or their date format is not supported by it.
+	 */
+	TimestampParser newTimestampParser() {
+		return timestampParser != null ? timestampParser.copy() : null;
+	}
+
+	/**
+	 * @return A new date format for the timestamps, or <code>null</code> when
+	 *         there are no timestamps.
+	 */
+	SimpleDateFormat newDateFormat() {
+		return dateFormat != null ? (SimpleDateFormat) dateFormat.clone() : null;
+	}
+
+	/**
+	 * Helper method that will convert timestamp format to a pattern
+	 *
+	 *
+	 * @return string
+	 */
+	private static String convertTimestamp(final String timestampFormat) {
+		// some locales (for example, French) generate timestamp text with
+		// characters not included in \w -
+		// now using \S (all non-whitespace characters) instead of /w
+		String result = timestampFormat.replaceAll(VALID_DATEFORMAT_CHAR_PATTERN + "+", "\\\\S+");
+		// make sure dots in timestamp are escaped
+		result = result.replaceAll(Pattern.quote("."), "\\\\.");
+		return result;
+	}
+
+	/**
+	 * Build the regular expression needed to parse log entries
+	 *
+	 * @return The keywords, regular expression, layout matcher and line
+	 *         prefilter for the log format.
+	 */
+	private Compiled initialize() {
+		final ArrayList<String> matchingKeywords = new ArrayList<>();
+
+		final ArrayList<String> buildingKeywords = new ArrayList<>();
+
+		String newPattern = logFormat;
+
+		int index = 0;
+		String current = newPattern;
+		// build a list of property names and temporarily replace the property
+		// with an empty string,
+		// we'll rebuild the pattern later
+		final ArrayList<String> propertyNames = new ArrayList<>();
+		while (index > -1) {
+			if (current.indexOf(PROP_START) > -1 && current.indexOf(PROP_END) > -1) {
+				index = current.indexOf(PROP_START);
+				final String longPropertyName = current.substring(current.indexOf(PROP_START),
+						current.indexOf(PROP_END) + 1);
+				final String shortProp = getShortPropertyName(longPropertyName);
+				buildingKeywords.add(shortProp);
+				propertyNames.add(longPropertyName);
+				current = current.substring(longPropertyName.length() + 1 + index);
+				newPattern = singleReplace(newPattern, longPropertyName,
+						new Integer(buildingKeywords.size() - 1).toString());
+			}
+			else {
+				// no properties
+				index = -1;
+			}
+		}
+
+		/*
+		 * we're using a treemap, so the index will be used as the key to ensure
+		 * keywords are ordered correctly
+		 *
+		 * examine pattern, adding keywords to an index-based map patterns can
+		 * contain only one of these per entry...properties are the only
+		 * 'keyword' that can occur multiple times in an entry
+		 */
+		final Iterator<String> iter = KEYWORDS.iterator();
+		while (iter.hasNext()) {
+			final String keyword = iter.next();
+			final int index2 = newPattern.indexOf(keyword);
+			if (index2 > -1) {
+				buildingKeywords.add(keyword);
+				newPattern = singleReplace(newPattern, keyword, new Integer(buildingKeywords.size() - 1).toString());
+			}
+		}
+
+		String buildingInt = "";
+
+		for (int i = 0; i < newPattern.length(); i++) {
+			final String thisValue = String.valueOf(newPattern.substring(i, i + 1));
+			if (isInteger(thisValue)) {
+				buildingInt = buildingInt + thisValue;
+			}
+			else {
+				if (isInteger(buildingInt)) {
+					matchingKeywords.add(buildingKeywords.get(Integer.parseInt(buildingInt)));
+				}
+				// reset
+				buildingInt = "";
+			}
+		}
+
+		// if the very last value is an int, make sure to add it
+		if (isInteger(buildingInt)) {
+			matchingKeywords.add(buildingKeywords.get(Integer.parseInt(buildingInt)));
+		}
+
+		final List<LayoutMatcher.Field> keywordFields = new ArrayList<>();
+		for (int i = 0; i < buildingKeywords.size(); i++) {
+			final String keyword = buildingKeywords.get(i);
+			if (i == (buildingKeywords.size() - 1)) {
+				keywordFields.add(LayoutMatcher.Field.GREEDY);
+			}
+			else if (Log4JReader.TIMESTAMP.equals(keyword)) {
+				keywordFields.add(LayoutMatcher.Field.TIMESTAMP);
+			}
+			else if (Log4JReader.LOGGER.equals(keyword) || Log4JReader.LEVEL.equals(keyword)) {
+				keywordFields.add(LayoutMatcher.Field.NOSPACE);
+			}
+			else {
+				keywordFields.add(LayoutMatcher.Field.DEFAULT);
+			}
+		}
+		final LayoutMatcher layoutMatcher = LayoutMatcher.compile(newPattern, keywordFields, timestampPatternText);
+		final LinePrefilter linePrefilter = LinePrefilter.compile(newPattern, keywordFields, timestampFormat);
+
+		newPattern = replaceMetaChars(newPattern);
+
+		// compress one or more spaces in the pattern into the [ ]+ regexp
+		// (supports padding of level in log files)
+		newPattern = newPattern.replaceAll(MULTIPLE_SPACES_REGEXP, MULTIPLE_SPACES_REGEXP);
+		newPattern = newPattern.replaceAll(Pattern.quote(PATTERN_WILDCARD), REGEXP_DEFAULT_WILDCARD);
+		// use buildingKeywords here to ensure correct order
+		for (int i = 0; i < buildingKeywords.size(); i++) {
+			final String keyword = buildingKeywords.get(i);
+			// make the final keyword greedy (we're assuming it's the message)
+			if (i == (buildingKeywords.size() - 1)) {
+				newPattern = singleReplace(newPattern, String.valueOf(i), GREEDY_GROUP);
+			}
+			else if (Log4JReader.TIMESTAMP.equals(keyword)) {
+				newPattern = singleReplace(newPattern, String.valueOf(i), "(" + timestampPatternText + ")");
+			}
+			else if (Log4JReader.LOGGER.equals(keyword) || Log4JReader.LEVEL.equals(keyword)) {
+				newPattern = singleReplace(newPattern, String.valueOf(i), NOSPACE_GROUP);
+			}
+			else {
+				newPattern = singleReplace(newPattern, String.valueOf(i), DEFAULT_GROUP);
+			}
+		}
+
+		return new Compiled(matchingKeywords, Pattern.compile(newPattern), layoutMatcher, linePrefilter);
+	}
+
+	/**
+	 * @return Whether the character is a date format letter, all other
+	 *         characters of a timestamp format are quoted.
+	 */
+	static boolean isDateFormatChar(final char c) {
+		return VALID_DATEFORMAT_CHARS.indexOf(c) >= 0;
+	}
+
+	private boolean isInteger(final String value) {
+		try {
+			Integer.parseInt(value);
+			return true;
+		}
+		catch (@SuppressWarnings("unused") final NumberFormatException ignored) {
+			return false;
+		}
+	}
+
+	private String quoteTimeStampChars(final String input) {
+		// put single quotes around text that isn't a supported dateformat char
+		final StringBuffer result = new StringBuffer();
+		// ok to default to false because we also check for index zero below
+		boolean lastCharIsDateFormat = false;
+		for (int i = 0; i < input.length(); i++) {
+			final String thisVal = input.substring(i, i + 1);
+			final boolean thisCharIsDateFormat = VALID_DATEFORMAT_CHARS.contains(thisVal);
+			// we have encountered a non-dateformat char
+			if (!thisCharIsDateFormat && (i == 0 || lastCharIsDateFormat)) {
+				result.append("'");
+			}
+			// we have encountered a dateformat char after previously
+			// encountering a non-dateformat char
+			if (thisCharIsDateFormat && i > 0 && !lastCharIsDateFormat) {
+				result.append("'");
+			}
+			lastCharIsDateFormat = thisCharIsDateFormat;
+			result.append(thisVal);
+		}
+		// append an end single-quote if we ended with non-dateformat char
+		if (!lastCharIsDateFormat) {
+			result.append("'");
+		}
+		return result.toString();
+	}
+
+	private String singleReplace(String inputString, final String oldString, final String newString) {
+		final int propLength = oldString.length();
+		final int startPos = inputString.indexOf(oldString);
+		if (startPos == -1) {
+			return inputString;
+		}
+		if (startPos == 0) {
+			inputString = inputString.substring(propLength);
+			inputString = newString + inputString;
+		}
+		else {
+			inputString = inputString.substring(0, startPos) + newString + inputString.substring(startPos + propLength);
+		}
+		return inputString;
+	}
+
+	private String getShortPropertyName(final String longPropertyName) {
+		final String currentProp = longPropertyName.substring(longPropertyName.indexOf(PROP_START));
+		final String prop = currentProp.substring(0, currentProp.indexOf(PROP_END) + 1);
+		final String shortProp = prop.substring(PROP_START.length(), prop.length() - 1);
+		return shortProp;
+	}
+
+	/**
+	 * Some perl5 characters may occur in the log file format. Escape these
+	 * characters to prevent parsing errors.
+	 *
+	 * @param input
+	 * @return string
+	 */
+	private String replaceMetaChars(String input) {
+		// escape backslash first since that character is used to escape the
+		// remaining meta chars
+		input = input.replaceAll("\\\\", "\\\\\\");
+
+		// don't escape star - it's used as the wildcard
+		input = input.replaceAll(Pattern.quote("]"), "\\\\]");
+		input = input.replaceAll(Pattern.quote("["), "\\\\[");
+		input = input.replaceAll(Pattern.quote("^"), "\\\\^");
+		input = input.replaceAll(Pattern.quote("$"), "\\\\$");
+		input = input.replaceAll(Pattern.quote("."), "\\\\.");
+		input = input.replaceAll(Pattern.quote("|"), "\\\\|");
+		input = input.replaceAll(Pattern.quote("?"), "\\\\?");
+		input = input.replaceAll(Pattern.quote("+"), "\\\\+");
+		input = input.replaceAll(Pattern.quote("("), "\\\\(");
+		input = input.replaceAll(Pattern.quote(")"), "\\\\)");
+		input = input.replaceAll(Pattern.quote("-"), "\\\\-");
+		input = input.replaceAll(Pattern.quote("{"), "\\\\{");
+		input = input.replaceAll(Pattern.quote("}"), "\\\\}");
+		input = input.replaceAll(Pattern.quote("#"), "\\\\#");
+		return input;
+	}
+
+	private static String getTimeStampFormat(final String patternLayout) {
+		final int basicIndex = patternLayout.indexOf("%d");
+		if (basicIndex < 0) {
+			return null;
+		}
+
+		final int index = patternLayout.indexOf("%d{");
+		// %d - default
+		if (index < 0) {
+			return "yyyy-MM-dd HH:mm:ss,SSS";
+		}
+
+		final int length = patternLayout.substring(index).indexOf("}");
+		final String timestampFormat = patternLayout.substring(index + "%d{".length(), index + length);
+		if (timestampFormat.equals("ABSOLUTE")) {
+			return "HH:mm:ss,SSS";
+		}
+		if (timestampFormat.equals("ISO8601")) {
+			return "yyyy-MM-dd HH:mm:ss,SSS";
+		}
+		if (timestampFormat.equals("DATE")) {
+			return "dd MMM yyyy HH:mm:ss,SSS";
+		}
+		return timestampFormat;
+	}
+
+	private static String getFormatFromConverters(final List<LoggingEventPatternConverter> converters) {
+		final StringBuffer buffer = new StringBuffer();
+		for (final LoggingEventPatternConverter converter : converters) {
+			if (converter instanceof DatePatternConverter) {
+				buffer.append("TIMESTAMP");
+			}
+			else if (converter instanceof MessagePatternConverter) {
+				buffer.append("MESSAGE");
+			}
+			else if (converter instanceof LoggerPatternConverter) {
+				buffer.append("LOGGER");
+			}
+			else if (converter instanceof ClassNamePatternConverter) {
+				buffer.append("CLASS");
+			}
+			else if (converter instanceof RelativeTimePatternConverter) {
+				buffer.append("PROP(RELATIVETIME)");
+			}
+			else if (converter instanceof ThreadPatternConverter) {
+				buffer.append("THREAD");
+			}
+			else if (converter instanceof NDCPatternConverter) {
+				buffer.append("NDC");
+			}
+			else if (converter instanceof LiteralPatternConverter) {
+				final LiteralPatternConverter literal = (LiteralPatternConverter) converter;
+				// format shouldn't normally take a null, but we're getting a
+				// literal, so passing in the buffer will work
+				literal.format(null, buffer);
+			}
+			else if (converter instanceof SequenceNumberPatternConverter) {
+				buffer.append("PROP(log4jid)");
+			}
+			else if (converter instanceof LevelPatternConverter) {
+				buffer.append("LEVEL");
+			}
+			else if (converter instanceof MethodLocationPatternConverter) {
+				buffer.append("METHOD");
+			}
+			else if (converter instanceof FullLocationPatternConverter) {
+				buffer.append("PROP(locationInfo)");
+			}
+			else if (converter instanceof LineLocationPatternConverter) {
+				buffer.append("LINE");
+			}
+			else if (converter instanceof FileLocationPatternConverter) {
+				buffer.append("FILE");
+			}
+			else if (converter instanceof PropertiesPatternConverter) {
+				// PropertiesPatternConverter propertiesConverter =
+				// (PropertiesPatternConverter) converter;
+				// String option = propertiesConverter.getOption();
+				// if (option != null && option.length() > 0) {
+				// buffer.append("PROP(" + option + ")");
+				// } else {
+				buffer.append("PROP(PROPERTIES)");
+				// }
+			}
+			else if (converter instanceof LineSeparatorPatternConverter) {
+				// done
+			}
+		}
+		return buffer.toString();
+	}
+
+	private static String getLogFormatFromPatternLayout(final String patternLayout) {
+		final String input = OptionConverter.convertSpecialChars(patternLayout);
+		final List<LoggingEventPatternConverter> converters = new ArrayList<>();
+		final List<FormattingInfo> fields = new ArrayList<>();
+		final Map<?, ?> converterRegistry = null;
+
+		PatternParser.parse(input, converters, fields, converterRegistry, PatternParser.getPatternLayoutRules());
+		return getFormatFromConverters(converters);
+	}
+
+	/** The results of {@link Log4JLayout#initialize()}. */
+	private static final class Compiled {
+		private final List<String> matchingKeywords;
+		private final Pattern regexpPattern;
+		private final LayoutMatcher layoutMatcher;
+		private final LinePrefilter linePrefilter;
+
+		public Compiled(final List<String> matchingKeywords, final Pattern regexpPattern,
+				final LayoutMatcher layoutMatcher, final LinePrefilter linePrefilter) {
+			this.matchingKeywords = matchingKeywords;
+			this.regexpPattern = regexpPattern;
+			this.layoutMatcher = layoutMatcher;
+			this.linePrefilter = linePrefilter;
+		}
+	}
+
+	private static final class Key {
+		private final String patternLayout;
+		private final Locale locale;
+		private final TimeZone timeZone;
+
+		public Key(final String patternLayout, final Locale locale, final TimeZone timeZone) {
+			this.patternLayout = patternLayout;
+			this.locale = locale;
+			// Time zones are mutable.
+			this.timeZone = (TimeZone) timeZone.clone();
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(patternLayout, locale, timeZone);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			final Key other = (Key) obj;
+			return patternLayout.equals(other.patternLayout) && locale.equals(other.locale)
+					&& timeZone.equals(other.timeZone);
+		}
+	}
+}
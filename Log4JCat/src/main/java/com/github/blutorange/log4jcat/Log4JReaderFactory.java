@@ -4,16 +4,22 @@ import java.util.Locale;
 import java.util.TimeZone;
 
 class Log4JReaderFactory implements ILogReaderFactory {
-	private final String patternLayout;
-	private final TimeZone timeZone;
-	private final Locale locale;
-	public Log4JReaderFactory(final String patternLayout, final Locale locale, final TimeZone timeZone) {
-		this.locale = locale;
-		this.timeZone = timeZone;
-		this.patternLayout = patternLayout;
+	private final Log4JLayout layout;
+	private final ContinuationMode continuationMode;
+	private final int continuationLimit;
+	private final String searchKey;
+	public Log4JReaderFactory(final String patternLayout, final Locale locale, final TimeZone timeZone,
+			final ContinuationMode continuationMode, final int continuationLimit, final String searchKey) {
+		this.layout = Log4JLayout.of(patternLayout, locale, timeZone);
+		this.continuationMode = continuationMode;
+		this.continuationLimit = continuationLimit;
+		this.searchKey = searchKey;
+		if (searchKey != null && !layout.getMatchingKeywords().contains(searchKey))
+			throw new IllegalArgumentException(
+					String.format("The pattern layout %s has no field %s to search by.", patternLayout, searchKey));
 	}
 	@Override
 	public ILogReader create() {
-		return new Log4JReader(patternLayout, locale, timeZone);
+		return new Log4JReader(layout, continuationMode, continuationLimit, searchKey);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,318 @@
+package com.github.blutorange.log4jcat;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>
+ * Pages of log files kept in memory outside of the heap, shared by all inputs
+ * opened with the pool, see {@link InputFactory#open(java.io.File, java.nio.charset.Charset, PagePool)}.
+ * Searches of a log file read the same few pages over and over, such as the
+ * middle and the end of the file. With a pool, these are read from memory
+ * instead of from the file.
+ * </p>
+ * <p>
+ * The pool never holds more pages than fit into its memory budget, pages are
+ * allocated as they are needed. When the pool is full, the pages are evicted
+ * with the clock algorithm, so that a page read again since the hand last
+ * passed it gets a second chance. Pages are identified by the file key (or
+ * path), length and modification time of their log file, so that a changed
+ * log file does not use outdated pages. Pages are read from the file directly
+ * into their frame, which is neither read nor evicted until the read is done.
+ * This class is thread-safe.
+ * </p>
+ */
+public final class PagePool {
+	/** 64 KB pages. */
+	public static final int DEFAULT_PAGE_SIZE = 65536;
+
+	private final int pageSize;
+	private final PageKey[] keys;
+	private final ByteBuffer[] pages;
+	private final int[] lengths;
+	private final boolean[] referenced;
+	/** Completed when the page of the frame has been read, <code>null</code> when it is not being read. */
+	private final CompletableFuture<?>[] loading;
+	private final Map<PageKey, Integer> frames = new HashMap<>();
+	private int hand;
+
+	/**
+	 * Creates a pool with pages of {@link #DEFAULT_PAGE_SIZE}.
+	 *
+	 * @param budget
+	 *            Maximum number of bytes of all pages.
+	 */
+	public PagePool(final long budget) {
+		this(budget, DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	 * @param budget
+	 *            Maximum number of bytes of all pages.
+	 * @param pageSize
+	 *            Number of bytes of each page.
+	 * @throws IllegalArgumentException
+	 *             When the budget is smaller than a page.
+	 */
+	public PagePool(final long budget, final int pageSize) {
+		if (pageSize <= 0 || budget < pageSize)
+			throw new IllegalArgumentException("Budget must hold at least one page");
+		final int count = (int) Math.min(budget / pageSize, Integer.MAX_VALUE - 8);
+		this.pageSize = pageSize;
+		keys = new PageKey[count];
+		pages = new ByteBuffer[count];
+		lengths = new int[count];
+		referenced = new boolean[count];
+		loading = new CompletableFuture<?>[count];
+	}
+
+	/**
+	 * Reads bytes of a log file, from the pool if its page is in the pool, or
+	 * from the file otherwise. At most the rest of the page is read. Does not
+	 * move the file pointer.
+	 *
+	 * @param fileKey
+	 *            Key of the log file, see
+	 *            {@link ProbeCache#keyOf(java.io.File, long)}.
+	 * @param file
+	 *            The log file, for reading pages not in the pool.
+	 * @param position
+	 *            Position in the file to read from.
+	 * @param bytes
+	 *            Array to read into.
+	 * @param offset
+	 *            Offset in the array.
+	 * @param length
+	 *            Maximum number of bytes to read.
+	 * @return The number of bytes read, or -1 at the end of file.
+	 * @throws IOException
+	 *             When the file could not be read.
+	 */
+	int read(final Object fileKey, final RandomAccessFile file, final long position, final byte[] bytes,
+			final int offset, final int length) throws IOException {
+		final PageKey key = new PageKey(fileKey, position / pageSize);
+		final int within = (int) (position % pageSize);
+		while (true) {
+			final int frame;
+			final CompletableFuture<?> loaded;
+			synchronized (this) {
+				final Integer existing = frames.get(key);
+				if (existing == null) {
+					frame = evict();
+					if (frame >= 0)
+						claim(frame, key);
+					loaded = null;
+				}
+				else if (loading[existing] != null) {
+					frame = existing;
+					loaded = loading[existing];
+				}
+				// A page at the end of the file is read again when the file has grown.
+				else if (lengths[existing] == pageSize || key.page * pageSize + lengths[existing] >= file.length())
+					return copy(existing, within, bytes, offset, length);
+				else {
+					frame = existing;
+					loading[frame] = new CompletableFuture<Void>();
+					loaded = null;
+				}
+			}
+			if (loaded != null) {
+				// Wait for the page being read by another thread instead of reading it again.
+				loaded.join();
+				continue;
+			}
+			if (frame < 0) {
+				// All frames are being read, read around the pool.
+				final int count = Math.min(length, pageSize - within);
+				return file.getChannel().read(ByteBuffer.wrap(bytes, offset, count), position);
+			}
+			// Read outside the lock, so that other pages can be read meanwhile.
+			final ByteBuffer page = pages[frame].duplicate();
+			page.clear();
+			final FileChannel fileChannel = file.getChannel();
+			final long start = key.page * pageSize;
+			try {
+				while (page.hasRemaining() && fileChannel.read(page, start + page.position()) > 0)
+					continue;
+			}
+			catch (final IOException | RuntimeException e) {
+				synchronized (this) {
+					release(frame);
+				}
+				throw e;
+			}
+			synchronized (this) {
+				loaded(frame, page.position());
+				return copy(frame, within, bytes, offset, length);
+			}
+		}
+	}
+
+	/**
+	 * Starts reading the page at the given position in the background, unless
+	 * it is in the pool already or being read. Does not wait for the page.
+	 *
+	 * @param fileKey
+	 *            Key of the log file, see
+	 *            {@link ProbeCache#keyOf(java.io.File, long)}.
+	 * @param channel
+	 *            The log file.
+	 * @param position
+	 *            Position in the file.
+	 */
+	void prefetch(final Object fileKey, final AsynchronousFileChannel channel, final long position) {
+		final PageKey key = new PageKey(fileKey, position / pageSize);
+		final int frame;
+		synchronized (this) {
+			if (frames.containsKey(key))
+				return;
+			frame = evict();
+			if (frame < 0)
+				return;
+			claim(frame, key);
+		}
+		final ByteBuffer page = pages[frame].duplicate();
+		page.clear();
+		final long start = key.page * pageSize;
+		try {
+			channel.read(page, start, page, new CompletionHandler<Integer, ByteBuffer>() {
+				@Override
+				public void completed(final Integer read, final ByteBuffer buffer) {
+					if (read > 0 && buffer.hasRemaining()) {
+						try {
+							channel.read(buffer, start + buffer.position(), buffer, this);
+							return;
+						}
+						catch (final RuntimeException e) {
+							failed(e, buffer);
+							return;
+						}
+					}
+					synchronized (PagePool.this) {
+						loaded(frame, buffer.position());
+					}
+				}
+
+				@Override
+				public void failed(final Throwable e, final ByteBuffer buffer) {
+					// Whoever waits reads the page itself.
+					synchronized (PagePool.this) {
+						release(frame);
+					}
+				}
+			});
+		}
+		catch (final RuntimeException e) {
+			synchronized (this) {
+				release(frame);
+			}
+		}
+	}
+
+	/**
+	 * Assigns a frame to a page that is about to be read into it, must be
+	 * called with the lock held. Until {@link #loaded(int, int)} or
+	 * {@link #release(int)}, the frame is not read or evicted.
+	 */
+	private void claim(final int frame, final PageKey key) {
+		keys[frame] = key;
+		frames.put(key, frame);
+		lengths[frame] = 0;
+		loading[frame] = new CompletableFuture<Void>();
+		if (pages[frame] == null)
+			pages[frame] = ByteBuffer.allocateDirect(pageSize);
+	}
+
+	/**
+	 * Marks a frame as read, must be called with the lock held.
+	 */
+	private void loaded(final int frame, final int length) {
+		lengths[frame] = length;
+		loading[frame].complete(null);
+		loading[frame] = null;
+	}
+
+	/**
+	 * Frees a frame whose page could not be read, must be called with the lock
+	 * held.
+	 */
+	private void release(final int frame) {
+		frames.remove(keys[frame]);
+		keys[frame] = null;
+		lengths[frame] = 0;
+		loading[frame].complete(null);
+		loading[frame] = null;
+	}
+
+	private int copy(final int frame, final int within, final byte[] bytes, final int offset, final int length) {
+		referenced[frame] = true;
+		final int count = Math.min(length, lengths[frame] - within);
+		if (count <= 0)
+			return -1;
+		final ByteBuffer page = pages[frame];
+		page.position(within);
+		page.get(bytes, offset, count);
+		return count;
+	}
+
+	/**
+	 * @return A free frame, or the frame of the first page not referenced
+	 *         since the hand last passed it, or -1 when all frames are being
+	 *         read.
+	 */
+	private int evict() {
+		// Two rounds, the first one may only clear the references.
+		for (int i = 2 * keys.length; i > 0; --i) {
+			final int frame = hand;
+			hand = (hand + 1) % keys.length;
+			if (loading[frame] != null)
+				continue;
+			if (keys[frame] == null)
+				return frame;
+			if (!referenced[frame]) {
+				frames.remove(keys[frame]);
+				keys[frame] = null;
+				return frame;
+			}
+			referenced[frame] = false;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return Number of bytes of each page.
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	private final static class PageKey {
+		private final Object file;
+		private final long page;
+
+		public PageKey(final Object file, final long page) {
+			this.file = file;
+			this.page = page;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * file.hashCode() + Long.hashCode(page);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof PageKey))
+				return false;
+			final PageKey other = (PageKey) obj;
+			return page == other.page && file.equals(other.file);
+		}
+	}
+}
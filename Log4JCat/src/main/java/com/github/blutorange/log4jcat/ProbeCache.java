@@ -0,0 +1,185 @@
+package com.github.blutorange.log4jcat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Remembers the starting position and timestamp of the log entries read
+ * while searching a log file, so that later searches of the same log file
+ * can start with a smaller range. Log files are identified by their file key
+ * (or path), size and modification time. The cache holds a limited number of
+ * log entries, and drops the least recently searched log files first. This
+ * class is thread-safe.
+ */
+final class ProbeCache {
+	private final int capacity;
+	private final LinkedHashMap<Key, Probes> files = new LinkedHashMap<>(16, 0.75f, true);
+	private int size;
+
+	/**
+	 * @param capacity
+	 *            Maximum number of log entries to remember.
+	 */
+	public ProbeCache(final int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @param file
+	 *            The log file.
+	 * @param length
+	 *            The current length of the log file.
+	 * @return The key under which the log entries of the file are stored.
+	 * @throws IOException
+	 *             When the file attributes could not be read.
+	 */
+	public static Key keyOf(final File file, final long length) throws IOException {
+		final BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		return new Key(identityOf(file, attributes), length, attributes.lastModifiedTime().toMillis());
+	}
+
+	/**
+	 * @param file
+	 *            The log file.
+	 * @return The file key of the log file, or its path when the file system
+	 *         has no file keys. Stays the same when the file is changed.
+	 * @throws IOException
+	 *             When the file attributes could not be read.
+	 */
+	public static Object identityOf(final File file) throws IOException {
+		return identityOf(file, Files.readAttributes(file.toPath(), BasicFileAttributes.class));
+	}
+
+	private static Object identityOf(final File file, final BasicFileAttributes attributes) throws IOException {
+		final Object fileKey = attributes.fileKey();
+		return fileKey != null ? fileKey : file.getCanonicalPath();
+	}
+
+	/**
+	 * Puts the two log entries enclosing the given date into the given map, ie.
+	 * the last known log entry before the date and the first known log entry
+	 * on or after the date. Takes logarithmic time in the number of log
+	 * entries known.
+	 *
+	 * @param key
+	 *            Key of the log file, see {@link #keyOf(File, long)}.
+	 * @param date
+	 *            Date to look for.
+	 * @param probes
+	 *            Map between the starting position of a log entry and its
+	 *            timestamp.
+	 */
+	public synchronized void bracket(final Key key, final long date, final Map<Long, Long> probes) {
+		final Probes cached = files.get(key);
+		if (cached == null)
+			return;
+		final Map.Entry<Long, long[]> after = cached.byTime.ceilingEntry(date);
+		if (after != null)
+			probes.put(after.getValue()[0], after.getKey());
+		final Map.Entry<Long, long[]> before = cached.byTime.lowerEntry(date);
+		if (before != null)
+			probes.put(before.getValue()[1], before.getKey());
+	}
+
+	/**
+	 * Adds the given log entries of a log file to the cache.
+	 *
+	 * @param key
+	 *            Key of the log file, see {@link #keyOf(File, long)}.
+	 * @param probes
+	 *            Map between the starting position of the log entries and
+	 *            their timestamp.
+	 */
+	public synchronized void put(final Key key, final NavigableMap<Long, Long> probes) {
+		Probes cached = files.get(key);
+		if (cached == null) {
+			cached = new Probes();
+			files.put(key, cached);
+		}
+		size -= cached.byPosition.size();
+		cached.byPosition.putAll(probes);
+		if (cached.byPosition.size() > capacity) {
+			// Thin out the entries evenly when a single file exceeds the capacity.
+			while (cached.byPosition.size() > capacity) {
+				final Iterator<Long> it = cached.byPosition.keySet().iterator();
+				for (boolean drop = false; it.hasNext(); drop = !drop) {
+					it.next();
+					if (drop)
+						it.remove();
+				}
+			}
+			cached.byTime.clear();
+			cached.index(cached.byPosition);
+		}
+		else {
+			cached.index(probes);
+		}
+		size += cached.byPosition.size();
+		// Drop the least recently used files.
+		final Iterator<Map.Entry<Key, Probes>> it = files.entrySet().iterator();
+		while (size > capacity && it.hasNext()) {
+			final Map.Entry<Key, Probes> entry = it.next();
+			if (entry.getValue() != cached) {
+				size -= entry.getValue().byPosition.size();
+				it.remove();
+			}
+		}
+	}
+
+	/** The log entries known for a log file. */
+	private final static class Probes {
+		/** Map between the starting position of a log entry and its timestamp. */
+		private final NavigableMap<Long, Long> byPosition = new TreeMap<>();
+		/**
+		 * Map between a timestamp and the first and last position of the log
+		 * entries with that timestamp.
+		 */
+		private final NavigableMap<Long, long[]> byTime = new TreeMap<>();
+
+		/** Adds the given log entries to {@link #byTime}. */
+		private void index(final Map<Long, Long> probes) {
+			for (final Map.Entry<Long, Long> probe : probes.entrySet()) {
+				final long pos = probe.getKey();
+				final long[] range = byTime.get(probe.getValue());
+				if (range == null)
+					byTime.put(probe.getValue(), new long[] { pos, pos });
+				else {
+					range[0] = Math.min(range[0], pos);
+					range[1] = Math.max(range[1], pos);
+				}
+			}
+		}
+	}
+
+	final static class Key {
+		private final Object identity;
+		private final long length;
+		private final long lastModified;
+
+		public Key(final Object identity, final long length, final long lastModified) {
+			this.identity = identity;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * identity.hashCode() + Long.hashCode(length)) + Long.hashCode(lastModified);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			final Key other = (Key) obj;
+			return identity.equals(other.identity) && length == other.length && lastModified == other.lastModified;
+		}
+	}
+}
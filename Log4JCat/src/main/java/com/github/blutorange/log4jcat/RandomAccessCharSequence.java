@@ -23,6 +23,11 @@ class RandomAccessCharSequence extends ARandomAccessInput {
 		this.currentPos = 0;
 	}
 
+	@Override
+	ARandomAccessInput duplicate() {
+		return new RandomAccessCharSequence(charSequence);
+	}
+
 	@Override
 	public void seek(final long pos) throws IOException {
 		this.currentPos = pos < length ? (int)pos : length;
@@ -34,9 +39,9 @@ class RandomAccessCharSequence extends ARandomAccessInput {
 	}
 
 	@Override
-	public String readLine() throws IOException {
-		if (isEof()) return null;
-		final StringBuilder sb = new StringBuilder();
+	public boolean readLine(final StringBuilder sb) throws IOException {
+		sb.setLength(0);
+		if (isEof()) return false;
 		char c;
 		boolean r = false;
 		loop: while (currentPos < length) {
@@ -53,7 +58,7 @@ class RandomAccessCharSequence extends ARandomAccessInput {
 				sb.append(c);
 			}
 		}
-		return sb.toString();
+		return true;
 	}
 
 	@Override
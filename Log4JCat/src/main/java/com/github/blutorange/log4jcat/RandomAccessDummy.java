@@ -16,6 +16,11 @@ class RandomAccessDummy extends ARandomAccessInput {
 	public RandomAccessDummy() {
 	}
 
+	@Override
+	ARandomAccessInput duplicate() {
+		return new RandomAccessDummy();
+	}
+
 	@Override
 	public void seek(final long pos) throws IOException {
 		// Empty stream, no seeking to be done.
@@ -27,8 +32,9 @@ class RandomAccessDummy extends ARandomAccessInput {
 	}
 
 	@Override
-	public String readLine() throws IOException {
-		return null;
+	public boolean readLine(final StringBuilder line) {
+		line.setLength(0);
+		return false;
 	}
 
 	@Override
@@ -0,0 +1,261 @@
+package com.github.blutorange.log4jcat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a log file mapped into memory. Files larger than a segment are mapped
+ * as several segments. Line breaks are searched for directly in the mapped
+ * bytes, so seeking and reading a line do not need any system calls once the
+ * file is in the page cache. Only works for charsets where a line break is a
+ * single byte that cannot occur within other characters, see
+ * {@link #supports(Charset)}. Lines are decoded and limited in length as
+ * the random access file of the same charset does, so that both read the same
+ * lines.
+ * <p>
+ * The file is mapped when it is opened, later changes of its length are not
+ * seen. Closing drops the references to the mapping, it is released when it
+ * is garbage collected.
+ */
+class RandomAccessMappedFile extends ARandomAccessInput {
+	/** Segments of 1 GB. */
+	static final int SEGMENT_BITS = 30;
+
+	private final File source;
+	private final Charset charset;
+	private final boolean utf8;
+	private ByteBuffer[] segments;
+	private final int segmentBits;
+	private final long segmentMask;
+	private final long length;
+	private long pos;
+	private ByteBuffer bytes = ByteBuffer.allocate(256);
+	private final CharBuffer chars = CharBuffer.allocate(256);
+	/** For UTF-8. */
+	private final CharsetDecoder decoder;
+	/** For single byte charsets, see {@link ARandomAccessFileForwarder#byteTable(Charset)}. */
+	private final int[] table;
+	private final int lineLimit;
+
+	private RandomAccessMappedFile(final File source, final Charset charset, final ByteBuffer[] segments,
+			final int segmentBits, final long length) {
+		this.source = source;
+		this.charset = charset;
+		this.utf8 = StandardCharsets.UTF_8.equals(charset);
+		this.segments = segments;
+		this.segmentBits = segmentBits;
+		this.segmentMask = (1L << segmentBits) - 1;
+		this.length = length;
+		if (utf8) {
+			decoder = charset.newDecoder();
+			decoder.onMalformedInput(CodingErrorAction.IGNORE);
+			decoder.onUnmappableCharacter(CodingErrorAction.IGNORE);
+			table = null;
+			lineLimit = ARandomAccessFileForwarder.LIMIT_LINE_CHARACTERS;
+		}
+		else {
+			decoder = null;
+			table = ARandomAccessFileForwarder.byteTable(charset);
+			lineLimit = ARandomAccessFileForwarder.byteLineLimit(charset);
+		}
+	}
+
+	/**
+	 * @param file
+	 *            The log file.
+	 * @param charset
+	 *            The charset of the log file, see {@link #supports(Charset)}.
+	 * @param segmentBits
+	 *            Each segment has a size of 2 to the power of this many bytes.
+	 * @return The mapped log file.
+	 * @throws IOException
+	 *             When the file could not be mapped.
+	 */
+	static RandomAccessMappedFile open(final File file, final Charset charset, final int segmentBits)
+			throws IOException {
+		try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final long length = channel.size();
+			final long segmentSize = 1L << segmentBits;
+			final ByteBuffer[] segments = new ByteBuffer[(int) ((length + segmentSize - 1) >>> segmentBits)];
+			for (int i = 0; i < segments.length; ++i) {
+				final long start = i * segmentSize;
+				segments[i] = channel.map(MapMode.READ_ONLY, start, Math.min(segmentSize, length - start));
+			}
+			return new RandomAccessMappedFile(file, charset, segments, segmentBits, length);
+		}
+	}
+
+	/**
+	 * @param charset
+	 *            A charset.
+	 * @return Whether log files in this charset can be mapped. This is the
+	 *         case for UTF-8 and charsets with one byte per character that
+	 *         encode line breaks as in ASCII.
+	 */
+	static boolean supports(final Charset charset) {
+		if (!charset.canEncode())
+			return false;
+		if (!StandardCharsets.UTF_8.equals(charset) && charset.newEncoder().maxBytesPerChar() != 1.0f)
+			return false;
+		final ByteBuffer lineBreaks = charset.encode("\r\n");
+		return lineBreaks.remaining() == 2 && lineBreaks.get(0) == '\r' && lineBreaks.get(1) == '\n';
+	}
+
+	@Override
+	File getFile() {
+		return source;
+	}
+
+	@Override
+	ARandomAccessInput duplicate() throws IOException {
+		ensureOpen();
+		// Shares the mapping, but not the position of the buffers.
+		final ByteBuffer[] copies = new ByteBuffer[segments.length];
+		for (int i = 0; i < segments.length; ++i)
+			copies[i] = segments[i].duplicate();
+		return new RandomAccessMappedFile(source, charset, copies, segmentBits, length);
+	}
+
+	@Override
+	public void seek(final long pos) throws IOException {
+		if (pos < 0)
+			throw new IOException("Negative seek offset");
+		this.pos = pos;
+	}
+
+	@Override
+	public long tell() {
+		return pos;
+	}
+
+	@Override
+	public long length() {
+		return length;
+	}
+
+	@Override
+	public boolean readLine(final StringBuilder line) throws IOException {
+		ensureOpen();
+		line.setLength(0);
+		if (!utf8)
+			return readByteLine(line);
+		// Skip to the next single byte character, as the UTF-8 random access
+		// file does, so that both read the same lines.
+		while (pos < length && (byteAt(pos) & 0b10000000) != 0)
+			++pos;
+		if (pos >= length)
+			return false;
+		final long end = lineEnd(pos);
+		pos = decode(pos, end, line);
+		// A line cut at the limit continues with the next line.
+		if (pos < end || line.length() >= lineLimit)
+			return true;
+		// Line breaks are \n, \r, or \r\n.
+		if (pos < length && byteAt(pos++) == '\r' && pos < length && byteAt(pos) == '\n')
+			++pos;
+		return true;
+	}
+
+	/**
+	 * Reads a line of a single byte charset, byte by byte with the table.
+	 */
+	private boolean readByteLine(final StringBuilder line) {
+		if (pos >= length)
+			return false;
+		while (line.length() < lineLimit && pos < length) {
+			final int c = table[byteAt(pos++) & 0xFF];
+			if (c == '\n')
+				break;
+			if (c == '\r') {
+				if (pos < length && table[byteAt(pos) & 0xFF] == '\n')
+					++pos;
+				break;
+			}
+			if (c != ARandomAccessFileForwarder.IGNORED)
+				line.append((char) c);
+		}
+		return true;
+	}
+
+	private byte byteAt(final long offset) {
+		return segments[(int) (offset >>> segmentBits)].get((int) (offset & segmentMask));
+	}
+
+	/**
+	 * @return The position of the first line break at or after the given
+	 *         position, or the length of the file when there is none.
+	 */
+	private long lineEnd(final long from) {
+		long offset = from;
+		while (offset < length) {
+			final ByteBuffer segment = segments[(int) (offset >>> segmentBits)];
+			final long base = offset & ~segmentMask;
+			final int limit = segment.limit();
+			for (int i = (int) (offset & segmentMask); i < limit; ++i) {
+				final byte b = segment.get(i);
+				if (b == '\n' || b == '\r')
+					return base + i;
+			}
+			offset = base + limit;
+		}
+		return length;
+	}
+
+	/**
+	 * Decodes UTF-8 up to the end or until the line has reached its limit.
+	 *
+	 * @return The position after the last decoded byte.
+	 */
+	private long decode(final long start, final long end, final StringBuilder line) {
+		final int count = (int) (end - start);
+		if (bytes.capacity() < count)
+			bytes = ByteBuffer.allocate(Math.max(count, 2 * bytes.capacity()));
+		bytes.clear();
+		long offset = start;
+		while (bytes.position() < count) {
+			final ByteBuffer segment = segments[(int) (offset >>> segmentBits)];
+			final int index = (int) (offset & segmentMask);
+			final int chunk = Math.min(count - bytes.position(), segment.limit() - index);
+			segment.position(index);
+			segment.get(bytes.array(), bytes.position(), chunk);
+			bytes.position(bytes.position() + chunk);
+			offset += chunk;
+		}
+		bytes.flip();
+		decoder.reset();
+		CoderResult result;
+		do {
+			chars.clear();
+			chars.limit(Math.min(chars.capacity(), lineLimit - line.length()));
+			result = decoder.decode(bytes, chars, true);
+			line.append(chars.array(), 0, chars.position());
+			// A surrogate pair does not fit when one character is left.
+			if (line.length() >= lineLimit || result.isOverflow() && chars.position() == 0)
+				return start + bytes.position();
+		}
+		while (result.isOverflow());
+		// UTF-8 does not have any state to flush.
+		return end;
+	}
+
+	private void ensureOpen() throws IOException {
+		if (segments == null)
+			throw new IOException("Input closed");
+	}
+
+	@Override
+	public void close() {
+		// Unmapped when garbage collected, which needs all references to be dropped.
+		segments = null;
+	}
+}
@@ -0,0 +1,22 @@
+package com.github.blutorange.log4jcat;
+
+/**
+ * How the log file trimmer picks the next position to look at while
+ * narrowing down the search range.
+ *
+ * @see Log4J#searchMode(SearchMode)
+ */
+public enum SearchMode {
+	/**
+	 * Always halves the search range. Robust, but needs about log2(n) probes.
+	 */
+	BISECTION,
+
+	/**
+	 * Guesses the position from the timestamps at both ends of the search
+	 * range, assuming the log file was written at a roughly constant rate.
+	 * Falls back to bisection whenever a guess did not at least halve the
+	 * search range. Needs only a few probes for evenly written log files.
+	 */
+	INTERPOLATION;
+}
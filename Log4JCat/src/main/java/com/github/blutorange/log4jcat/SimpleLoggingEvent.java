@@ -0,0 +1,155 @@
+package com.github.blutorange.log4jcat;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.slf4j.Marker;
+import org.slf4j.event.Level;
+
+/**
+ * A log entry read from a log file. Only the level and the timestamp are
+ * parsed right away. The other fields are kept as regions of the first line of
+ * the log entry, and the message is assembled from the continuation text only
+ * when it is requested. The fields are not synchronized, when they are
+ * requested by several threads at once, they may be computed more than once.
+ * Unlike a log4j event, it does not need a logger registered with log4j.
+ */
+class SimpleLoggingEvent implements org.slf4j.event.LoggingEvent {
+	/** Index of the start of the logger name in the regions. */
+	static final int LOGGER_REGION = 0;
+	/** Index of the start of the thread name in the regions. */
+	static final int THREAD_REGION = 2;
+	/** Index of the start of the first message line in the regions. */
+	static final int MESSAGE_REGION = 4;
+
+	private final Level level;
+	private final long timeStamp;
+	private final String line;
+	private final int[] regions;
+	private final String messagePrefix;
+	private final String continuation;
+	private String loggerName;
+	private String threadName;
+	private String message;
+
+	/**
+	 * @param level
+	 *            Level of the log entry.
+	 * @param timeStamp
+	 *            Timestamp of the log entry.
+	 * @param line
+	 *            First line of the log entry.
+	 * @param regions
+	 *            Start and end of each field in the first line, see
+	 *            {@link #LOGGER_REGION}, {@link #THREAD_REGION} and
+	 *            {@link #MESSAGE_REGION}. The start is negative when the field
+	 *            is missing.
+	 * @param messagePrefix
+	 *            Text to put before the message, may be <code>null</code>.
+	 * @param continuation
+	 *            Continuation lines of the message, each preceded by a line
+	 *            separator.
+	 */
+	public SimpleLoggingEvent(final Level level, final long timeStamp, final String line, final int[] regions,
+			final String messagePrefix, final String continuation) {
+		this.level = level;
+		this.timeStamp = timeStamp;
+		this.line = line;
+		this.regions = regions;
+		this.messagePrefix = messagePrefix;
+		this.continuation = continuation;
+	}
+
+	/**
+	 * @param level
+	 *            A log4j level.
+	 * @return The corresponding slf4j level.
+	 */
+	public static Level toLevel(final org.apache.log4j.Level level) {
+		switch (level.toInt()) {
+		case org.apache.log4j.Level.TRACE_INT:
+			return Level.TRACE;
+		case org.apache.log4j.Level.ALL_INT:
+			return Level.TRACE;
+		case org.apache.log4j.Level.DEBUG_INT:
+			return Level.DEBUG;
+		case org.apache.log4j.Level.ERROR_INT:
+			return Level.ERROR;
+		case org.apache.log4j.Level.FATAL_INT:
+			return Level.ERROR;
+		case org.apache.log4j.Level.INFO_INT:
+			return Level.INFO;
+		case org.apache.log4j.Level.OFF_INT:
+			return Level.ERROR;
+		case org.apache.log4j.Level.WARN_INT:
+			return Level.WARN;
+		default:
+			return Level.TRACE;
+		}
+	}
+
+	private String region(final int region) {
+		return regions[region] >= 0 ? line.substring(regions[region], regions[region + 1]) : null;
+	}
+
+	/**
+	 * Combine the first message line and the continuation lines.
+	 */
+	private String buildMessage() {
+		final String firstMessageLine = region(MESSAGE_REGION);
+		if (continuation.isEmpty() && messagePrefix == null) {
+			return firstMessageLine != null ? firstMessageLine : "";
+		}
+		final StringBuilder message = new StringBuilder(continuation.length() + 80);
+		if (messagePrefix != null) {
+			message.append(messagePrefix).append(' ');
+		}
+		if (firstMessageLine != null) {
+			message.append(firstMessageLine);
+		}
+		message.append(continuation);
+		return message.toString();
+	}
+
+	@Override
+	public String getMessage() {
+		if (message == null) {
+			message = buildMessage();
+		}
+		return message;
+	}
+	@Override
+	public Level getLevel() {
+		return level;
+	}
+	@Override
+	public Marker getMarker() {
+		return null;
+	}
+	@Override
+	public String getLoggerName() {
+		if (loggerName == null) {
+			final String name = region(LOGGER_REGION);
+			// a logger must exist at a minimum for the event to be processed
+			loggerName = name != null ? name : "Unknown";
+		}
+		return loggerName;
+	}
+	@Override
+	public String getThreadName() {
+		if (threadName == null) {
+			threadName = region(THREAD_REGION);
+		}
+		return threadName;
+	}
+	@Override
+	public Object[] getArgumentArray() {
+		return ArrayUtils.EMPTY_OBJECT_ARRAY;
+	}
+	@Override
+	public long getTimeStamp() {
+		return timeStamp;
+	}
+	@Override
+	public Throwable getThrowable() {
+		return null;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,80 @@
+package com.github.blutorange.log4jcat;
+
+/**
+ * Picks the threshold at which the search switches from narrowing down the
+ * search range to a linear scan, based on how long the searches so far took.
+ * Keeps a moving average of the time of a single probe (a seek followed by
+ * reading two log entries), of the time needed to read a byte sequentially,
+ * and of the size of a log entry. This class is thread-safe.
+ */
+final class ThresholdTuner {
+	/** Weight of a new measurement in the moving averages. */
+	private static final double ALPHA = 0.125;
+
+	private final long min;
+	private final long max;
+	private long threshold;
+	private double nanosPerProbe;
+	private double nanosPerByte;
+	private double bytesPerEvent;
+
+	/**
+	 * @param initial
+	 *            Threshold to use until enough has been measured.
+	 * @param min
+	 *            Smallest threshold to choose.
+	 * @param max
+	 *            Largest threshold to choose.
+	 */
+	public ThresholdTuner(final long initial, final long min, final long max) {
+		this.threshold = initial;
+		this.min = min;
+		this.max = max;
+	}
+
+	/**
+	 * @return The threshold currently chosen, in bytes.
+	 */
+	public synchronized long getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * @param nanos
+	 *            Time a single probe took.
+	 */
+	public synchronized void probed(final long nanos) {
+		nanosPerProbe = average(nanosPerProbe, nanos);
+		update();
+	}
+
+	/**
+	 * @param bytes
+	 *            Number of bytes read by a linear scan.
+	 * @param events
+	 *            Number of log entries read by a linear scan.
+	 * @param nanos
+	 *            Time the linear scan took.
+	 */
+	public synchronized void scanned(final long bytes, final long events, final long nanos) {
+		if (bytes <= 0 || events <= 0)
+			return;
+		nanosPerByte = average(nanosPerByte, (double) nanos / bytes);
+		bytesPerEvent = average(bytesPerEvent, (double) bytes / events);
+		update();
+	}
+
+	private void update() {
+		if (nanosPerProbe <= 0 || nanosPerByte <= 0)
+			return;
+		// Scanning a range of w bytes reads w/2 bytes on average. Probing once
+		// more costs one probe plus scanning w/4 bytes on average. So probing
+		// stops paying off once w/4 bytes can be read faster than one probe.
+		final double chosen = Math.max(4 * nanosPerProbe / nanosPerByte, 4 * bytesPerEvent);
+		threshold = Math.max(min, Math.min(max, (long) chosen));
+	}
+
+	private static double average(final double average, final double value) {
+		return average > 0 ? average + ALPHA * (value - average) : value;
+	}
+}
@@ -0,0 +1,231 @@
+package com.github.blutorange.log4jcat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A sparse index of a log file, stored in a sidecar file next to it. Contains
+ * the starting position and timestamp of about one log entry every
+ * {@link #getSpacing()} bytes, so that a search can start with a small range
+ * right away. The index remembers the size and modification time of the log
+ * file it was made for, see {@link #isUpToDate(long, long)}, and the settings
+ * the timestamps were parsed with, see {@link #of(File, long, String)}.
+ * Threads changing the index must synchronize on it.
+ */
+final class TimestampIndex {
+	/** Appended to the name of the log file to get the name of the index file. */
+	public static final String EXTENSION = ".l4jidx";
+
+	private static final int MAGIC = 0x4C344A49; // L4JI
+	private static final int VERSION = 3;
+
+	private final File indexFile;
+	private final long spacing;
+	private final String fingerprint;
+	private long size;
+	private long lastModified;
+	private long[] offsets;
+	private long[] timeStamps;
+	private int count;
+
+	private TimestampIndex(final File indexFile, final long spacing, final String fingerprint) {
+		this.indexFile = indexFile;
+		this.spacing = spacing;
+		this.fingerprint = fingerprint;
+		clear();
+	}
+
+	/**
+	 * Loads the index of the given log file. When there is no index file yet,
+	 * or when it cannot be read or was made with a different spacing or
+	 * fingerprint, an empty index is returned.
+	 *
+	 * @param logFile
+	 *            The log file whose index to load.
+	 * @param spacing
+	 *            The number of bytes between two entries of the index.
+	 * @param fingerprint
+	 *            The settings that determine the timestamps read from the log
+	 *            file, such as the pattern layout, time zone, locale and
+	 *            search key. An index made with other settings is not used.
+	 * @return The index, never <code>null</code>.
+	 */
+	public static TimestampIndex of(final File logFile, final long spacing, final String fingerprint) {
+		final TimestampIndex index = new TimestampIndex(new File(logFile.getPath() + EXTENSION), spacing, fingerprint);
+		if (index.indexFile.isFile()) {
+			try {
+				index.load();
+			}
+			catch (@SuppressWarnings("unused") final IOException ignored) {
+				// Corrupt or unreadable, we just make a new one.
+				index.clear();
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * @param size
+	 *            Current size of the log file.
+	 * @param lastModified
+	 *            Current modification time of the log file.
+	 * @return Whether the index was made for the log file as it is now.
+	 */
+	public boolean isUpToDate(final long size, final long lastModified) {
+		return this.size == size && this.lastModified == lastModified;
+	}
+
+	/**
+	 * @return The size of the log file the index was made for.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return The number of bytes between two entries of the index.
+	 */
+	public long getSpacing() {
+		return spacing;
+	}
+
+	/**
+	 * @return The position of the last entry, or -1 when the index is empty.
+	 */
+	public long getLastOffset() {
+		return count > 0 ? offsets[count - 1] : -1L;
+	}
+
+	/**
+	 * @return The timestamp of the last entry, or {@link Long#MIN_VALUE} when
+	 *         the index is empty.
+	 */
+	public long getLastTimeStamp() {
+		return count > 0 ? timeStamps[count - 1] : Long.MIN_VALUE;
+	}
+
+	/**
+	 * Removes all entries, eg. when the log file was replaced.
+	 */
+	public void clear() {
+		size = -1L;
+		lastModified = -1L;
+		offsets = new long[16];
+		timeStamps = new long[16];
+		count = 0;
+	}
+
+	/**
+	 * Adds an entry. Entries must be added in the order of their position.
+	 *
+	 * @param offset
+	 *            Starting position of the log entry.
+	 * @param timeStamp
+	 *            Timestamp of the log entry.
+	 */
+	public void add(final long offset, final long timeStamp) {
+		if (count == offsets.length) {
+			offsets = Arrays.copyOf(offsets, 2 * count);
+			timeStamps = Arrays.copyOf(timeStamps, 2 * count);
+		}
+		offsets[count] = offset;
+		timeStamps[count] = timeStamp;
+		++count;
+	}
+
+	/**
+	 * Marks the index as being made for the log file as it is now.
+	 *
+	 * @param size
+	 *            Current size of the log file.
+	 * @param lastModified
+	 *            Current modification time of the log file.
+	 */
+	public void update(final long size, final long lastModified) {
+		this.size = size;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * Puts the two entries enclosing the given date into the given map, ie. the
+	 * last entry before the date and the first entry on or after the date.
+	 *
+	 * @param date
+	 *            Date to look for.
+	 * @param probes
+	 *            Map between the starting position of a log entry and its
+	 *            timestamp.
+	 */
+	public synchronized void bracket(final long date, final Map<Long, Long> probes) {
+		int low = 0, high = count;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (timeStamps[mid] < date)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		if (low > 0)
+			probes.put(offsets[low - 1], timeStamps[low - 1]);
+		if (low < count)
+			probes.put(offsets[low], timeStamps[low]);
+	}
+
+	/**
+	 * Writes the index to its sidecar file. The index is only an optimization,
+	 * so failing to write it (eg. in a read-only directory) is not an error.
+	 */
+	public void save() {
+		File temp = null;
+		try {
+			// A temporary file of its own, so that concurrent writers do not mix.
+			temp = Files.createTempFile(indexFile.getAbsoluteFile().getParentFile().toPath(), indexFile.getName(),
+					".tmp").toFile();
+			try (final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(spacing);
+				out.writeUTF(fingerprint);
+				out.writeLong(size);
+				out.writeLong(lastModified);
+				out.writeInt(count);
+				for (int i = 0; i < count; ++i) {
+					out.writeLong(offsets[i]);
+					out.writeLong(timeStamps[i]);
+				}
+			}
+			Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (@SuppressWarnings("unused") final IOException ignored) {
+			if (temp != null)
+				temp.delete();
+		}
+	}
+
+	private void load() throws IOException {
+		try (final DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != spacing
+					|| !in.readUTF().equals(fingerprint))
+				return;
+			final long size = in.readLong();
+			final long lastModified = in.readLong();
+			final int count = in.readInt();
+			for (int i = 0; i < count; ++i)
+				add(in.readLong(), in.readLong());
+			update(size, lastModified);
+		}
+	}
+}
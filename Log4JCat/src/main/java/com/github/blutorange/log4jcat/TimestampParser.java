@@ -0,0 +1,289 @@
+package com.github.blutorange.log4jcat;
+
+import java.text.DateFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Parses timestamps without going through {@link SimpleDateFormat}. The date
+ * format is compiled into a list of literal texts and fields, and the digits of
+ * each field are read directly from the text. The time of the last second
+ * seen is remembered, so that for consecutive timestamps within the same
+ * second only the milliseconds need to be read. The time is computed with the
+ * calendar of the date format, so the result is the same as that of
+ * {@link SimpleDateFormat#parse(String)}.
+ * <p>
+ * Only numeric years, months, days, hours, minutes, seconds and milliseconds
+ * of a fixed width and month names are supported. This covers the named
+ * formats ABSOLUTE, ISO8601 and DATE. Milliseconds with fewer than three
+ * letters, such as <code>S</code>, are formatted without padding, so they are
+ * read with any number of digits, as {@link SimpleDateFormat} does. Instances
+ * are not thread-safe.
+ */
+final class TimestampParser {
+	/** Returned when the text cannot be parsed. */
+	static final long INVALID = Long.MIN_VALUE;
+
+	private static final int LITERAL = -1;
+	private static final int MONTH_NAME = -2;
+
+	/** Field numbers. */
+	private static final int YEAR = 0;
+	private static final int MONTH = 1;
+	private static final int DAY = 2;
+	private static final int HOUR = 3;
+	private static final int MINUTE = 4;
+	private static final int SECOND = 5;
+	private static final int MILLISECOND = 6;
+
+	/** Value of each field when it is not part of the date format. */
+	private static final int[] DEFAULTS = { 1970, 1, 1, 0, 0, 0, 0 };
+
+	/** Most digits read for a field of any number of digits. */
+	private static final int MAX_DIGITS = 9;
+
+	/** Either {@link #LITERAL}, {@link #MONTH_NAME}, or the field number. */
+	private final int[] tokens;
+	private final String[] literals;
+	/** The number of digits of each field, or 0 for any number of digits. */
+	private final int[] widths;
+	private final String[] months;
+	private final String[] shortMonths;
+	private final Calendar calendar;
+	private final int[] values = new int[DEFAULTS.length];
+	private final int[] lastValues = new int[DEFAULTS.length];
+	private long lastSecond = INVALID;
+
+	private TimestampParser(final int[] tokens, final String[] literals, final int[] widths, final String[] months,
+			final String[] shortMonths, final Calendar calendar) {
+		this.tokens = tokens;
+		this.literals = literals;
+		this.widths = widths;
+		this.months = months;
+		this.shortMonths = shortMonths;
+		this.calendar = calendar;
+	}
+
+	/**
+	 * @param timestampFormat
+	 *            The date format of the timestamps.
+	 * @param dateFormat
+	 *            The date format for parsing the timestamps, with the locale
+	 *            and time zone to use.
+	 * @return The compiled parser, or <code>null</code> when the date format
+	 *         contains a field or text this parser does not support.
+	 */
+	static TimestampParser compile(final String timestampFormat, final SimpleDateFormat dateFormat) {
+		final List<Integer> tokens = new ArrayList<>();
+		final List<String> literals = new ArrayList<>();
+		final List<Integer> widths = new ArrayList<>();
+		final StringBuilder literal = new StringBuilder();
+		int i = 0;
+		while (i < timestampFormat.length()) {
+			final char c = timestampFormat.charAt(i);
+			int j = i;
+			while (j < timestampFormat.length() && timestampFormat.charAt(j) == c)
+				++j;
+			final int count = j - i;
+			final Integer field = field(c, count);
+			if (field == null)
+				return null;
+			if (field.intValue() == LITERAL) {
+				literal.append(timestampFormat, i, j);
+			}
+			else {
+				if (literal.length() > 0) {
+					tokens.add(LITERAL);
+					literals.add(literal.toString());
+					widths.add(0);
+					literal.setLength(0);
+				}
+				final boolean variable = field.intValue() == MILLISECOND && count < 3;
+				// SimpleDateFormat reads a fixed number of digits when fields
+				// abut, we only support this for fields of a fixed width.
+				if (variable && (literal.length() == 0 && !tokens.isEmpty() && tokens.get(tokens.size() - 1) >= 0
+						|| j < timestampFormat.length() && Log4JLayout.isDateFormatChar(timestampFormat.charAt(j))))
+					return null;
+				tokens.add(field);
+				literals.add(null);
+				widths.add(variable ? 0 : count);
+			}
+			i = j;
+		}
+		if (literal.length() > 0) {
+			tokens.add(LITERAL);
+			literals.add(literal.toString());
+			widths.add(0);
+		}
+		if (tokens.isEmpty())
+			return null;
+		final DateFormatSymbols symbols = dateFormat.getDateFormatSymbols();
+		return new TimestampParser(tokens.stream().mapToInt(Integer::intValue).toArray(),
+				literals.toArray(new String[literals.size()]), widths.stream().mapToInt(Integer::intValue).toArray(),
+				symbols.getMonths(), symbols.getShortMonths(), (Calendar) dateFormat.getCalendar().clone());
+	}
+
+	/**
+	 * @return The field for a run of the given character, {@link #LITERAL}
+	 *         when it is not a date format letter, or <code>null</code> when
+	 *         it is not supported.
+	 */
+	private static Integer field(final char c, final int count) {
+		switch (c) {
+		case 'y':
+			return count == 4 ? YEAR : null;
+		case 'M':
+			return count >= 3 ? MONTH_NAME : count == 2 ? MONTH : null;
+		case 'd':
+			return count == 2 ? DAY : null;
+		case 'H':
+			return count == 2 ? HOUR : null;
+		case 'm':
+			return count == 2 ? MINUTE : null;
+		case 's':
+			return count == 2 ? SECOND : null;
+		case 'S':
+			return count <= 3 ? MILLISECOND : null;
+		case '\'':
+			return null;
+		default:
+			return Log4JLayout.isDateFormatChar(c) ? null : LITERAL;
+		}
+	}
+
+	/**
+	 * @return A new parser for the same date format, with its own state, so
+	 *         that it can be used independently of this parser.
+	 */
+	TimestampParser copy() {
+		return new TimestampParser(tokens, literals, widths, months, shortMonths, (Calendar) calendar.clone());
+	}
+
+	/**
+	 * @param text
+	 *            Text to parse. Text after the timestamp is ignored, as with
+	 *            {@link SimpleDateFormat#parse(String)}.
+	 * @return The timestamp in milliseconds since the epoch, or
+	 *         {@link #INVALID} when the text does not match the date format.
+	 */
+	public long parse(final String text) {
+		return parse(text, 0, text.length());
+	}
+
+	/**
+	 * @param text
+	 *            Text containing the timestamp.
+	 * @param start
+	 *            Start of the timestamp in the text.
+	 * @param end
+	 *            End of the timestamp in the text.
+	 * @return The timestamp in milliseconds since the epoch, or
+	 *         {@link #INVALID} when the text does not match the date format.
+	 */
+	public long parse(final CharSequence text, final int start, final int end) {
+		System.arraycopy(DEFAULTS, 0, values, 0, DEFAULTS.length);
+		int pos = start;
+		final int length = end;
+		for (int t = 0; t < tokens.length; ++t) {
+			switch (tokens[t]) {
+			case LITERAL: {
+				final String literal = literals[t];
+				if (length - pos < literal.length())
+					return INVALID;
+				for (int k = 0; k < literal.length(); ++k)
+					if (text.charAt(pos + k) != literal.charAt(k))
+						return INVALID;
+				pos += literal.length();
+				break;
+			}
+			case MONTH_NAME: {
+				int next = matchName(text, pos, length, months);
+				if (next < 0 && (next = matchName(text, pos, length, shortMonths)) < 0)
+					return INVALID;
+				pos = next;
+				break;
+			}
+			default: {
+				final int next = widths[t] > 0 ? pos + widths[t] : digitsEnd(text, pos, length);
+				if (next > length || next == pos)
+					return INVALID;
+				int value = 0;
+				for (int k = pos; k < next; ++k) {
+					final char c = text.charAt(k);
+					if (c < '0' || c > '9')
+						return INVALID;
+					value = value * 10 + c - '0';
+				}
+				values[tokens[t]] = value;
+				pos = next;
+			}
+			}
+		}
+		return secondOf() + values[MILLISECOND];
+	}
+
+	/**
+	 * @return The position after the digits at the given position, at most
+	 *         {@link #MAX_DIGITS} of them.
+	 */
+	private static int digitsEnd(final CharSequence text, final int pos, final int end) {
+		int next = pos;
+		final int limit = Math.min(end, pos + MAX_DIGITS);
+		while (next < limit && text.charAt(next) >= '0' && text.charAt(next) <= '9')
+			++next;
+		return next;
+	}
+
+	/**
+	 * Sets the month and returns the position after the longest month name at
+	 * the given position, as {@link SimpleDateFormat} does.
+	 */
+	private int matchName(final CharSequence text, final int pos, final int end, final String[] names) {
+		int best = -1;
+		int bestLength = 0;
+		for (int k = 0; k < names.length; ++k) {
+			final String name = names[k];
+			final int nameLength = name.length();
+			if (nameLength > bestLength && pos + nameLength <= end && regionMatchesIgnoreCase(name, text, pos)) {
+				best = k;
+				bestLength = nameLength;
+			}
+		}
+		if (best < 0)
+			return -1;
+		values[MONTH] = best + 1;
+		return pos + bestLength;
+	}
+
+	/** Same as {@link String#regionMatches(boolean, int, String, int, int)}, ignoring case. */
+	private static boolean regionMatchesIgnoreCase(final String name, final CharSequence text, final int pos) {
+		for (int k = 0; k < name.length(); ++k) {
+			final char a = name.charAt(k);
+			final char b = text.charAt(pos + k);
+			if (a != b) {
+				final char upperA = Character.toUpperCase(a);
+				final char upperB = Character.toUpperCase(b);
+				if (upperA != upperB && Character.toLowerCase(upperA) != Character.toLowerCase(upperB))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The time of the second given by the parsed fields, computed
+	 *         only when it differs from the last second.
+	 */
+	private long secondOf() {
+		if (lastSecond != INVALID && values[SECOND] == lastValues[SECOND] && values[MINUTE] == lastValues[MINUTE]
+				&& values[HOUR] == lastValues[HOUR] && values[DAY] == lastValues[DAY]
+				&& values[MONTH] == lastValues[MONTH] && values[YEAR] == lastValues[YEAR])
+			return lastSecond;
+		calendar.clear();
+		calendar.set(values[YEAR], values[MONTH] - 1, values[DAY], values[HOUR], values[MINUTE], values[SECOND]);
+		System.arraycopy(values, 0, lastValues, 0, values.length);
+		return lastSecond = calendar.getTimeInMillis();
+	}
+}
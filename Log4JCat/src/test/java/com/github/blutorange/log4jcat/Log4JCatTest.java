@@ -4,15 +4,31 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Level;
+import org.apache.log4j.PatternLayout;
 import org.easetech.easytest.annotation.DataLoader;
 import org.easetech.easytest.annotation.Param;
 import org.easetech.easytest.loader.LoaderType;
@@ -26,6 +42,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.event.LoggingEvent;
 
 @RunWith(DataDrivenTestRunner.class)
 @DataLoader(filePaths = {"Log4JCatTest.xml"}, loaderType=LoaderType.XML, writeData = false)
@@ -54,6 +71,39 @@ public class Log4JCatTest {
 		// Nothing to setup for now.
 	}
 
+	/**
+	 * @return A temporary copy of the given resource, to be deleted by the
+	 *         caller.
+	 */
+	private static File copyToTempFile(final String resource) throws IOException {
+		final File temp = File.createTempFile("Log4JCatTest", ".log");
+		try (final OutputStream output = new FileOutputStream(temp);
+				final InputStream input = Log4JCatTest.class.getResourceAsStream(resource)) {
+			IOUtils.copy(input, output);
+		}
+		catch (final IOException | RuntimeException e) {
+			temp.delete();
+			throw e;
+		}
+		return temp;
+	}
+
+	/**
+	 * @return A temporary file with the given content, to be deleted by the
+	 *         caller.
+	 */
+	private static File writeTempFile(final byte[] bytes) throws IOException {
+		final File temp = File.createTempFile("Log4JCatTest", ".log");
+		try (final OutputStream output = new FileOutputStream(temp)) {
+			output.write(bytes);
+		}
+		catch (final IOException e) {
+			temp.delete();
+			throw e;
+		}
+		return temp;
+	}
+
 	@Test
 	public final void testEach(
 			@Param(name="patternLayout") final String patternLayout,
@@ -81,11 +131,13 @@ public class Log4JCatTest {
 			@Param(name="logFilePath") final String logFilePath,
 			@Param(name="date") final String dateString,
 			@Param(name="encoding") final String encoding,
+			@Param(name="searchMode") final String searchMode,
 			@Param(name="shouldPosition") final long shouldPosition,
 			@Param(name="shouldPositionString") final long shouldPositionString) throws IOException {
 
 		final ZonedDateTime dateTime = ZonedDateTime.parse(dateString);
-		final Log4JCat cat = Log4J.of(patternLayout).get();
+		final Log4JCat cat = Log4J.of(patternLayout)
+				.searchMode(searchMode != null ? SearchMode.valueOf(searchMode) : null).get();
 		final Charset charset = Charset.forName(encoding != null ? encoding : "UTF-8");
 
 		long t1,t2;
@@ -98,15 +150,7 @@ public class Log4JCatTest {
 		Assert.assertTrue(t2-t1<1000f);
 		LOG.info("RAM find took " + (t2-t1)/1000f + "s.");
 
-		final File temp = File.createTempFile("Log4JCatTest", ".log");
-		try (final OutputStream output = new FileOutputStream(temp);
-			final InputStream input = Log4JCatTest.class.getResourceAsStream(logFilePath)) {
-			IOUtils.copy(input, output);
-		}
-		catch (final IOException e) {
-			temp.delete();
-			throw e;
-		}
+		final File temp = copyToTempFile(logFilePath);
 		try (final IRandomAccessInput stream = InputFactory.open(temp, charset)) {
 			t1 = new Date().getTime();
 			final long isPosition = cat.find(stream, Timestamp.of(dateTime));
@@ -119,4 +163,592 @@ public class Log4JCatTest {
 		Assert.assertTrue(t2-t1<1000f);
 		LOG.info("File find took " + (t2-t1)/1000f + "s.");
 	}
+
+	@Test
+	public final void testFindRange(
+			@Param(name="patternLayout") final String patternLayout,
+			@Param(name="logFilePath") final String logFilePath,
+			@Param(name="dateStart") final String dateStart,
+			@Param(name="dateEnd") final String dateEnd,
+			@Param(name="shouldStart") final long shouldStart,
+			@Param(name="shouldEnd") final long shouldEnd) throws IOException {
+		final Log4JCat cat = Log4J.of(patternLayout).get();
+		final long start = Timestamp.of(ZonedDateTime.parse(dateStart));
+		final long end = Timestamp.of(ZonedDateTime.parse(dateEnd));
+
+		try (final IRandomAccessInput stream = InputFactory.open(Log4JCatTest.class.getResourceAsStream(logFilePath), "UTF-8")) {
+			final long[] range = cat.findRange(stream, start, end);
+			Assert.assertEquals(shouldStart, range[0]);
+			Assert.assertEquals(shouldEnd, range[1]);
+			Assert.assertEquals(cat.find(stream, start), range[0]);
+			Assert.assertEquals(cat.find(stream, end), range[1]);
+		}
+	}
+
+	@Test
+	public final void testFindIndexed(
+			@Param(name="patternLayout") final String patternLayout,
+			@Param(name="logFilePath") final String logFilePath,
+			@Param(name="date") final String dateString,
+			@Param(name="shouldPosition") final long shouldPosition) throws IOException {
+		final long date = Timestamp.of(ZonedDateTime.parse(dateString));
+		final Log4JCat cat = Log4J.of(patternLayout).index(true).get();
+		final File temp = copyToTempFile(logFilePath);
+		final File index = new File(temp.getPath() + ".l4jidx");
+		try {
+			// Creates the index.
+			try (final IRandomAccessInput stream = InputFactory.open(temp, "UTF-8")) {
+				Assert.assertEquals(shouldPosition, cat.find(stream, date));
+			}
+			Assert.assertTrue(index.isFile());
+			// Uses the existing index.
+			try (final IRandomAccessInput stream = InputFactory.open(temp, "UTF-8")) {
+				Assert.assertEquals(shouldPosition, cat.find(stream, date));
+			}
+			// Does not use the index made with another time zone.
+			final Log4JCat shifted = Log4J.of(patternLayout).timeZone("GMT+14:00").index(true).get();
+			try (final IRandomAccessInput stream = InputFactory.open(temp, "UTF-8")) {
+				Assert.assertEquals(Log4J.of(patternLayout).timeZone("GMT+14:00").get().find(stream, date),
+						shifted.find(stream, date));
+			}
+			// Extends the index. The test files do not end with a line break.
+			final long length = temp.length() + 1;
+			try (final OutputStream output = new FileOutputStream(temp, true)) {
+				output.write("\n[INFO ] 2099-01-01 00:00:00,000 TimeClass - Appended".getBytes("UTF-8"));
+			}
+			temp.setLastModified(temp.lastModified() + 2000L);
+			try (final IRandomAccessInput stream = InputFactory.open(temp, "UTF-8")) {
+				Assert.assertEquals(shouldPosition, cat.find(stream, date));
+				Assert.assertEquals(length, cat.find(stream, Timestamp.of(ZonedDateTime.parse("2098-01-01T00:00:00+00:00[UTC]"))));
+			}
+		}
+		finally {
+			temp.delete();
+			index.delete();
+		}
+	}
+
+	@Test
+	public final void testFindCached(
+			@Param(name="patternLayout") final String patternLayout,
+			@Param(name="logFilePath") final String logFilePath,
+			@Param(name="date") final String dateString,
+			@Param(name="shouldPosition") final long shouldPosition) throws IOException {
+		final long date = Timestamp.of(ZonedDateTime.parse(dateString));
+		final Log4JCat cat = Log4J.of(patternLayout).cache(100).get();
+		final File temp = copyToTempFile(logFilePath);
+		try {
+			try (final IRandomAccessInput stream = InputFactory.open(temp, "UTF-8")) {
+				Assert.assertEquals(shouldPosition, cat.find(stream, date));
+				// Searches around the date, then again for the date itself.
+				for (int i = -5; i <= 5; ++i)
+					cat.find(stream, date + i * 3600000L);
+				Assert.assertEquals(shouldPosition, cat.find(stream, date));
+			}
+		}
+		finally {
+			temp.delete();
+		}
+	}
+
+	@Test
+	public final void testFindAll(
+			@Param(name="patternLayout") final String patternLayout,
+			@Param(name="logFilePath") final String logFilePath,
+			@Param(name="dateStart") final String dateStart,
+			@Param(name="dateCount") final int dateCount,
+			@Param(name="dateStep") final long dateStep) throws IOException {
+		final Log4JCat cat = Log4J.of(patternLayout).get();
+		final long[] dates = new long[dateCount];
+		dates[0] = Timestamp.of(ZonedDateTime.parse(dateStart));
+		for (int i = 1; i < dateCount; ++i)
+			dates[i] = dates[i - 1] + dateStep;
+
+		try (final IRandomAccessInput stream = InputFactory.open(Log4JCatTest.class.getResourceAsStream(logFilePath), "UTF-8")) {
+			final long[] positions = cat.findAll(stream, dates);
+			Assert.assertEquals(dateCount, positions.length);
+			for (int i = 0; i < dateCount; ++i)
+				Assert.assertEquals(cat.find(stream, dates[i]), positions[i]);
+		}
+	}
+
+	@Test
+	public final void testFindAdaptive(
+			@Param(name="patternLayout") final String patternLayout,
+			@Param(name="logFilePath") final String logFilePath,
+			@Param(name="dateStart") final String dateStart,
+			@Param(name="dateCount") final int dateCount,
+			@Param(name="dateStep") final long dateStep) throws IOException {
+		final Log4JCat cat = Log4J.of(patternLayout).get();
+		final Log4JCat adaptive = Log4J.of(patternLayout).adaptiveThreshold(true).get();
+		final File temp = copyToTempFile(logFilePath);
+		try {
+			try (final IRandomAccessInput stream = InputFactory.open(temp, "UTF-8")) {
+				long date = Timestamp.of(ZonedDateTime.parse(dateStart));
+				for (int i = 0; i < dateCount; ++i, date += dateStep)
+					Assert.assertEquals(cat.find(stream, date), adaptive.find(stream, date));
+			}
+		}
+		finally {
+			temp.delete();
+		}
+		Assert.assertTrue(adaptive.getThreshold() >= 1000L);
+		LOG.info("Adaptive threshold is " + adaptive.getThreshold() + " bytes.");
+	}
+
+	@Test
+	public final void testThresholdTuner(
+			@Param(name="probeNanos") final long probeNanos,
+			@Param(name="scanBytes") final long scanBytes,
+			@Param(name="scanEvents") final long scanEvents,
+			@Param(name="scanNanos") final long scanNanos,
+			@Param(name="shouldThreshold") final long shouldThreshold,
+			@Param(name="probeNanos2") final long probeNanos2,
+			@Param(name="scanBytes2") final long scanBytes2,
+			@Param(name="scanEvents2") final long scanEvents2,
+			@Param(name="scanNanos2") final long scanNanos2,
+			@Param(name="shouldThreshold2") final long shouldThreshold2) {
+		final ThresholdTuner tuner = new ThresholdTuner(10000L, 1000L, 10000000L);
+		// Nothing measured yet.
+		tuner.probed(probeNanos);
+		Assert.assertEquals(10000L, tuner.getThreshold());
+		// max(4 * nanos per probe / nanos per byte, 4 * bytes per event), clamped.
+		tuner.scanned(scanBytes, scanEvents, scanNanos);
+		Assert.assertEquals(shouldThreshold, tuner.getThreshold());
+		// The costs changed, each new measurement has a weight of 1/8.
+		if (probeNanos2 > 0)
+			tuner.probed(probeNanos2);
+		tuner.scanned(scanBytes2, scanEvents2, scanNanos2);
+		Assert.assertEquals(shouldThreshold2, tuner.getThreshold());
+	}
+
+	@Test
+	public final void testFindDisordered(
+			@Param(name="patternLayout") final String patternLayout,
+			@Param(name="entryCount") final int entryCount,
+			@Param(name="entryStep") final long entryStep,
+			@Param(name="maxDisorder") final long maxDisorder) throws IOException {
+		final Log4JCat cat = Log4J.of(patternLayout).maxDisorder(maxDisorder).get();
+		final DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss,SSS").withZone(ZoneOffset.UTC);
+		final Random random = new Random(entryCount);
+		final long[] dates = new long[entryCount];
+		final long[] offsets = new long[entryCount];
+		final StringBuilder log = new StringBuilder();
+		// Each entry lies at most maxDisorder before the latest entry so far.
+		long latest = Timestamp.of(ZonedDateTime.parse("2017-01-01T00:00:00+00:00[UTC]"));
+		for (int i = 0; i < entryCount; ++i) {
+			latest += random.nextInt((int)entryStep + 2);
+			dates[i] = latest - (long)(random.nextDouble() * maxDisorder);
+			offsets[i] = log.length();
+			log.append("[INFO ] ").append(format.format(Instant.ofEpochMilli(dates[i]))).append(" TimeClass - Entry ").append(i).append('\n');
+		}
+
+		try (final IRandomAccessInput stream = InputFactory.open(log.toString())) {
+			for (int k = 0; k < 200; ++k) {
+				final long date = dates[0] - maxDisorder + (long)(random.nextDouble() * (latest - dates[0] + 2 * maxDisorder));
+				long shouldPosition = log.length();
+				for (int i = 0; i < entryCount; ++i) {
+					if (dates[i] >= date) {
+						shouldPosition = offsets[i];
+						break;
+					}
+				}
+				Assert.assertEquals(shouldPosition, cat.find(stream, date));
+			}
+		}
+	}
+
+	@Test
+	public final void testFindByKey(
+			@Param(name="patternLayout") final String patternLayout,
+			@Param(name="searchKey") final String searchKey,
+			@Param(name="linePrefix") final String linePrefix,
+			@Param(name="lineSuffix") final String lineSuffix,
+			@Param(name="entryCount") final int entryCount) throws IOException {
+		final Log4JCat cat = Log4J.of(patternLayout).searchKey(searchKey).get();
+		final Random random = new Random(entryCount);
+		final long[] keys = new long[entryCount];
+		final long[] offsets = new long[entryCount];
+		final StringBuilder log = new StringBuilder();
+		long key = 0L;
+		for (int i = 0; i < entryCount; ++i) {
+			key += random.nextInt(3);
+			keys[i] = key;
+			offsets[i] = log.length();
+			log.append(linePrefix).append(key).append(lineSuffix).append(" TimeClass - Entry ").append(i).append('\n');
+			if (random.nextInt(10) == 0)
+				log.append("\tat com.example.Foo.bar(Foo.java:").append(i).append(")\n");
+		}
+
+		try (final IRandomAccessInput stream = InputFactory.open(log.toString())) {
+			for (int k = 0; k < 200; ++k) {
+				final long value = random.nextInt((int)key + 2);
+				long shouldPosition = log.length();
+				for (int i = 0; i < entryCount; ++i) {
+					if (keys[i] >= value) {
+						shouldPosition = offsets[i];
+						break;
+					}
+				}
+				Assert.assertEquals(shouldPosition, cat.find(stream, value));
+			}
+		}
+	}
+
+	@Test
+	public final void testStream(
+			@Param(name="patternLayout") final String patternLayout,
+			@Param(name="logFilePath") final String logFilePath,
+			@Param(name="dateStart") final String dateStart,
+			@Param(name="dateEnd") final String dateEnd) throws IOException {
+		final Log4JCat cat = Log4J.of(patternLayout).get();
+		final long start = Timestamp.of(ZonedDateTime.parse(dateStart));
+		final long end = Timestamp.of(ZonedDateTime.parse(dateEnd));
+		final List<Long> should = new ArrayList<>();
+		final File temp = copyToTempFile(logFilePath);
+		try {
+			try (final IRandomAccessInput stream = InputFactory.open(temp, "UTF-8")) {
+				cat.each(stream, event -> {
+					Assert.assertEquals("TimeClass", event.getLoggerName());
+					if (event.getTimeStamp() >= start && event.getTimeStamp() < end)
+						should.add(event.getTimeStamp());
+					return true;
+				});
+			}
+			// Reading a log file must not register its loggers with log4j.
+			Assert.assertNull(org.apache.log4j.LogManager.exists("TimeClass"));
+			try (final IRandomAccessInput stream = InputFactory.open(temp, "UTF-8");
+					final Stream<LoggingEvent> events = cat.stream(stream, start, end)) {
+				Assert.assertEquals(should, events.map(event -> event.getTimeStamp()).collect(Collectors.toList()));
+			}
+			try (final IRandomAccessInput stream = InputFactory.open(temp, "UTF-8");
+					final Stream<LoggingEvent> events = cat.stream(stream, start, end)) {
+				Assert.assertEquals(should, events.parallel().map(event -> event.getTimeStamp()).collect(Collectors.toList()));
+			}
+		}
+		finally {
+			temp.delete();
+		}
+		try (final IRandomAccessInput stream = InputFactory.open(Log4JCatTest.class.getResourceAsStream(logFilePath), "UTF-8");
+				final Stream<LoggingEvent> events = cat.stream(stream, start, end)) {
+			Assert.assertEquals(should.size(), events.parallel().count());
+		}
+	}
+
+	@Test
+	public final void testEachParallel(
+			@Param(name="patternLayout") final String patternLayout,
+			@Param(name="logFilePath") final String logFilePath,
+			@Param(name="shards") final int shards) throws IOException {
+		final Log4JCat cat = Log4J.of(patternLayout).get();
+		final List<String> should = new ArrayList<>();
+		final List<Long> shouldEven = new ArrayList<>();
+		final File temp = copyToTempFile(logFilePath);
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			try (final IRandomAccessInput stream = InputFactory.open(temp, "UTF-8")) {
+				cat.each(stream, event -> {
+					if (event.getTimeStamp() % 2 == 0)
+						shouldEven.add(event.getTimeStamp());
+					return should.add(event.getTimeStamp() + event.getMessage());
+				});
+			}
+			try (final IRandomAccessInput stream = InputFactory.open(temp, "UTF-8")) {
+				Assert.assertEquals(should, cat.eachParallel(stream, shards, executor, event -> event.getTimeStamp() + event.getMessage()));
+			}
+			try (final IRandomAccessInput stream = InputFactory.open(temp, "UTF-8")) {
+				Assert.assertEquals(shouldEven, cat.eachParallel(stream, shards, null, event -> event.getTimeStamp() % 2 == 0 ? event.getTimeStamp() : null));
+			}
+			// Exceptions of the mapper are rethrown as they are.
+			final IllegalStateException failure = new IllegalStateException();
+			try (final IRandomAccessInput stream = InputFactory.open(temp, "UTF-8")) {
+				cat.eachParallel(stream, shards, executor, event -> {
+					throw failure;
+				});
+				Assert.fail();
+			}
+			catch (final IllegalStateException e) {
+				Assert.assertSame(failure, e);
+			}
+		}
+		finally {
+			executor.shutdown();
+			temp.delete();
+		}
+		try (final IRandomAccessInput stream = InputFactory.open(Log4JCatTest.class.getResourceAsStream(logFilePath), "UTF-8")) {
+			Assert.assertEquals(should, cat.eachParallel(stream, shards, null, event -> event.getTimeStamp() + event.getMessage()));
+		}
+	}
+
+	@Test
+	public final void testLayoutMatcher(
+			@Param(name="patternLayout") final String patternLayout,
+			@Param(name="lineCount") final int lineCount,
+			@Param(name="rejectsStackTrace") final boolean rejectsStackTrace) {
+		final Log4JReader reader = new Log4JReader(patternLayout);
+		final LayoutMatcher layoutMatcher = reader.getLayoutMatcher();
+		final Matcher regexpMatcher = reader.getPattern().matcher("");
+		final PatternLayout layout = new PatternLayout(patternLayout);
+		final Level[] levels = { Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR, Level.FATAL };
+		final String alphabet = "ab [](): -,.01 29\t";
+		final Random random = new Random(lineCount);
+		Assert.assertNotNull(layoutMatcher);
+		// The compiled layout is shared, the matchers are not.
+		final Log4JReader otherReader = new Log4JReader(patternLayout);
+		Assert.assertSame(reader.getPattern(), otherReader.getPattern());
+		Assert.assertNotSame(layoutMatcher, otherReader.getLayoutMatcher());
+		Assert.assertEquals(!rejectsStackTrace, reader.getLinePrefilter().accepts("\tat com.example.Foo.bar(Foo.java:42)"));
+		for (int i = 0; i < lineCount; ++i) {
+			final StringBuilder message = new StringBuilder();
+			for (int j = random.nextInt(40); j > 0; --j)
+				message.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			final String logger = random.nextBoolean() ? "com.example.Logger" + i : message.toString().trim();
+			final String line = layout.format(new org.apache.log4j.spi.LoggingEvent(Log4JCatTest.class.getName(),
+					org.apache.log4j.Logger.getLogger(logger), 1500000000000L + random.nextInt() * 1000L,
+					levels[random.nextInt(levels.length)], message.toString(), null)).replaceAll("[\\r\\n]+$", "");
+			Assert.assertTrue(line, reader.getLinePrefilter().accepts(line));
+			// The line itself, a continuation line, and a damaged line.
+			for (final String test : new String[] { line, message.toString(), line.substring(random.nextInt(line.length() + 1)) }) {
+				final boolean matches = regexpMatcher.reset(test).matches();
+				Assert.assertEquals(test, matches, layoutMatcher.matches(test));
+				if (matches) {
+					Assert.assertEquals(regexpMatcher.groupCount(), layoutMatcher.groupCount());
+					for (int k = 1; k <= regexpMatcher.groupCount(); ++k)
+						Assert.assertEquals(test, regexpMatcher.group(k), layoutMatcher.group(k));
+				}
+			}
+		}
+	}
+
+	@Test
+	public final void testTimestampParser(
+			@Param(name="patternLayout") final String patternLayout,
+			@Param(name="timestampFormat") final String timestampFormat,
+			@Param(name="locale") final String languageTag,
+			@Param(name="timeZone") final String timeZoneId,
+			@Param(name="count") final int count) throws Exception {
+		final Locale locale = Locale.forLanguageTag(languageTag);
+		final TimeZone timeZone = TimeZone.getTimeZone(timeZoneId);
+		final TimestampParser parser = new Log4JReader(patternLayout, locale, timeZone).getTimestampParser();
+		final SimpleDateFormat dateFormat = new SimpleDateFormat(timestampFormat, locale);
+		dateFormat.setTimeZone(timeZone);
+		final Random random = new Random(count);
+		Assert.assertNotNull(parser);
+		long time = 1490000000000L;
+		for (int i = 0; i < count; ++i) {
+			// Mostly within the same second, sometimes days later.
+			time += random.nextInt(4) == 0 ? random.nextInt(86400000) * 3L : random.nextInt(400);
+			final String text = dateFormat.format(new Date(time));
+			Assert.assertEquals(text, dateFormat.parse(text).getTime(), parser.parse(text));
+			Assert.assertEquals(text, TimestampParser.INVALID, parser.parse(text.substring(0, text.length() / 2)));
+		}
+	}
+
+	@Test
+	public final void testEvent(
+			@Param(name="patternLayout") final String patternLayout,
+			@Param(name="log") final String log,
+			@Param(name="level") final String level,
+			@Param(name="loggerName") final String loggerName,
+			@Param(name="threadName") final String threadName,
+			@Param(name="message") final String message,
+			@Param(name="continuationMode") final ContinuationMode continuationMode,
+			@Param(name="continuationLimit") final int continuationLimit) throws IOException {
+		final ILogReader reader = new Log4JReaderFactory(patternLayout, Locale.ENGLISH,
+				TimeZone.getTimeZone(ZoneOffset.UTC), continuationMode, continuationLimit, null).create();
+		try (final IRandomAccessInput input = InputFactory.open(log)) {
+			final LoggingEvent event = reader.processSingle(input);
+			Assert.assertNotNull(event);
+			Assert.assertEquals(level, event.getLevel().toString());
+			Assert.assertEquals(loggerName, event.getLoggerName());
+			Assert.assertEquals(threadName.isEmpty() ? null : threadName, event.getThreadName());
+			Assert.assertEquals(message.replace("\\n", System.getProperty("line.separator")), event.getMessage());
+			// Continuation lines are skipped up to the next entry, if any.
+			final LoggingEvent next = reader.processSingle(input);
+			if (next != null)
+				Assert.assertEquals("Next", next.getMessage());
+			Assert.assertNull(reader.processSingle(input));
+		}
+	}
+
+	@Test
+	public final void testMapped(
+			@Param(name="logFilePath") final String logFilePath,
+			@Param(name="encoding") final String encoding,
+			@Param(name="segmentBits") final int segmentBits,
+			@Param(name="lineLength") final int lineLength) throws IOException {
+		final Charset charset = Charset.forName(encoding);
+		final File temp;
+		if (logFilePath == null || logFilePath.isEmpty()) {
+			// Multi-byte characters and all kinds of line breaks.
+			final Random random = new Random(segmentBits);
+			final StringBuilder text = new StringBuilder();
+			for (int i = 0; i < 2000; ++i) {
+				text.append("[INFO ] 2017-06-22 12:00:00,000 Entry \u00e4\u20ac ").append(random.nextInt());
+				// Some lines longer than the line limit of the random access file.
+				if (lineLength > 0 && i % 50 == 0)
+					for (int j = random.nextInt(lineLength); j > 0; --j)
+						text.append(random.nextBoolean() ? "\u00e4" : "x\ud834\udd1e");
+				text.append(i % 3 == 0 ? "\r\n" : i % 3 == 1 ? "\n" : "\r");
+			}
+			temp = writeTempFile(text.toString().getBytes(charset));
+		}
+		else {
+			temp = copyToTempFile(logFilePath);
+		}
+		try (final IRandomAccessInput expected = InputFactory.open(temp, charset);
+				final IRandomAccessInput mapped = InputFactory.openMapped(temp.toPath(), charset, segmentBits)) {
+			Assert.assertEquals(expected.length(), mapped.length());
+			final Random random = new Random(expected.length());
+			for (int k = 0; k < 500; ++k) {
+				final long pos = random.nextInt((int) expected.length() + 1);
+				expected.seek(pos);
+				mapped.seek(pos);
+				for (int i = 0; i < 3; ++i) {
+					Assert.assertEquals(expected.readLine(), mapped.readLine());
+					Assert.assertEquals(expected.tell(), mapped.tell());
+				}
+			}
+		}
+		finally {
+			temp.delete();
+		}
+	}
+
+	@Test
+	public final void testEncodedLines(
+			@Param(name="encoding") final String encoding,
+			@Param(name="plainEncoding") final String plainEncoding,
+			@Param(name="readEncoding") final String readEncoding) throws IOException {
+		final Charset charset = Charset.forName(encoding);
+		final Charset plainCharset = Charset.forName(plainEncoding);
+		final Random random = new Random(encoding.hashCode());
+		final int count = 300;
+		final String[] lines = new String[count];
+		final String[] lineBreaks = { "\n", "\r\n", "\r" };
+		final StringBuilder text = new StringBuilder();
+		final long[] offsets = new long[count + 1];
+		for (int i = 0; i < count; ++i) {
+			// Some lines longer than the buffer, all with multi-byte characters.
+			final StringBuilder line = new StringBuilder("Entry ").append(i);
+			final int length = random.nextInt(10) == 0 ? 9000 : random.nextInt(100);
+			while (line.length() < length)
+				line.append(random.nextBoolean() ? "\u00e4\u20ac" : "x\ud834\udd1e");
+			lines[i] = line.toString();
+			final String lineBreak = lineBreaks[random.nextInt(lineBreaks.length)];
+			text.append(lines[i]).append(lineBreak);
+			offsets[i + 1] = offsets[i] + (lines[i] + lineBreak).getBytes(plainCharset).length;
+		}
+		final byte[] bytes = text.toString().getBytes(charset);
+		final int bomLength = bytes.length - text.toString().getBytes(plainCharset).length;
+		final File temp = writeTempFile(bytes);
+		try {
+			try (final IRandomAccessInput input = InputFactory.open(temp, Charset.forName(readEncoding))) {
+				final StringBuilder buffer = new StringBuilder();
+				for (int i = 0; i < count; ++i) {
+					if (i % 2 == 0)
+						Assert.assertEquals(lines[i], input.readLine());
+					else {
+						Assert.assertTrue(input.readLine(buffer));
+						Assert.assertEquals(lines[i], buffer.toString());
+					}
+					Assert.assertEquals(bomLength + offsets[i + 1], input.tell());
+				}
+				Assert.assertNull(input.readLine());
+				Assert.assertFalse(input.readLine(buffer));
+				Assert.assertEquals(0, buffer.length());
+				for (int k = 0; k < 100; ++k) {
+					final int i = random.nextInt(count);
+					input.seek(bomLength + offsets[i]);
+					Assert.assertEquals(lines[i], input.readLine());
+					Assert.assertEquals(bomLength + offsets[i + 1], input.tell());
+				}
+			}
+		}
+		finally {
+			temp.delete();
+		}
+	}
+
+	@Test
+	public final void testPagePool(
+			@Param(name="patternLayout") final String patternLayout,
+			@Param(name="logFilePath") final String logFilePath,
+			@Param(name="encoding") final String encoding,
+			@Param(name="pageSize") final int pageSize,
+			@Param(name="pageCount") final int pageCount,
+			@Param(name="prefetching") final boolean prefetching) throws IOException {
+		final Charset charset = Charset.forName(encoding);
+		final Log4JCat cat = Log4J.of(patternLayout).get();
+		final PagePool pool = new PagePool((long) pageSize * pageCount, pageSize);
+		final File temp = copyToTempFile(logFilePath);
+		try {
+			// Two inputs sharing the pool, so that each also reads pages of the other.
+			try (final IRandomAccessInput expected = InputFactory.open(temp, charset);
+					final IRandomAccessInput pooled = prefetching
+							? InputFactory.openPrefetching(temp.toPath(), charset, pool)
+							: InputFactory.open(temp, charset, pool);
+					final IRandomAccessInput other = InputFactory.open(temp.toPath(), charset, pool)) {
+				Assert.assertEquals(expected.length(), pooled.length());
+				final Random random = new Random(pageSize);
+				for (int k = 0; k < 500; ++k) {
+					final long pos = random.nextInt((int) expected.length() + 1);
+					final IRandomAccessInput input = random.nextBoolean() ? pooled : other;
+					expected.seek(pos);
+					input.seek(pos);
+					for (int i = 0; i < 3; ++i) {
+						Assert.assertEquals(expected.readLine(), input.readLine());
+						Assert.assertEquals(expected.tell(), input.tell());
+					}
+				}
+				for (int k = 0; k < 20; ++k) {
+					final long date = 1498000000000L + random.nextInt(200) * 86400000L;
+					Assert.assertEquals(cat.find(expected, date), cat.find(pooled, date));
+				}
+			}
+		}
+		finally {
+			temp.delete();
+		}
+	}
+
+	@Test
+	public final void testSpilled(
+			@Param(name="patternLayout") final String patternLayout,
+			@Param(name="logFilePath") final String logFilePath,
+			@Param(name="encoding") final String encoding,
+			@Param(name="reader") final boolean reader) throws IOException {
+		final Charset charset = Charset.forName(encoding);
+		final Log4JCat cat = Log4J.of(patternLayout).index(true).get();
+		final String content;
+		try (final InputStream input = Log4JCatTest.class.getResourceAsStream(logFilePath)) {
+			content = IOUtils.toString(input, charset);
+		}
+		final File temp;
+		try (final IRandomAccessInput expected = InputFactory.open(content);
+				final InputStream input = Log4JCatTest.class.getResourceAsStream(logFilePath);
+				final IRandomAccessInput spilled = reader
+						? InputFactory.openSpilled(new InputStreamReader(input, charset))
+						: InputFactory.openSpilled(input, charset)) {
+			temp = ((ARandomAccessInput) spilled).getFile();
+			Assert.assertTrue(temp.exists());
+			String line;
+			while ((line = expected.readLine()) != null)
+				Assert.assertEquals(line, spilled.readLine());
+			Assert.assertNull(spilled.readLine());
+			final Random random = new Random(logFilePath.hashCode());
+			for (int k = 0; k < 20; ++k) {
+				final long date = 1498000000000L + random.nextInt(200) * 86400000L;
+				final long pos = cat.find(spilled, date);
+				final long posExpected = cat.find(expected, date);
+				// Positions are bytes in one, characters in the other input.
+				expected.seek(posExpected);
+				spilled.seek(pos);
+				Assert.assertEquals(expected.readLine(), spilled.readLine());
+			}
+		}
+		Assert.assertFalse(temp.exists());
+		// No index is made for the temporary file.
+		Assert.assertFalse(new File(temp.getPath() + ".l4jidx").exists());
+	}
 }